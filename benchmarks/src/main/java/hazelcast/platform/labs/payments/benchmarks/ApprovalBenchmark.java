@@ -0,0 +1,63 @@
+package hazelcast.platform.labs.payments.benchmarks;
+
+import com.hazelcast.jet.datamodel.Tuple2;
+import hazelcast.platform.labs.payments.FraudPipeline;
+import hazelcast.platform.labs.payments.domain.ApprovalCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The output end of FraudPipeline: turning an approval into the Kafka message value
+ *
+ * resultJsonTuple  - the original path: resultJson String in a Tuple2, then StringSerializer's getBytes
+ * tuple2           - the cost of the Tuple2 alone
+ * encodeJson       - ApprovalCodec JSON, what the sink now does
+ * encodeBinary     - ApprovalCodec BINARY ("output=binary")
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApprovalBenchmark {
+    private String cardNumber;
+    private String []transactionIds;
+    private int next;
+
+    @Setup
+    public void setup(){
+        cardNumber = "4359-2592-9290-3110";
+        transactionIds = new String[1024];
+        for (int i = 0; i < transactionIds.length; ++i) transactionIds[i] = String.format("%010d", 1710969754L + i);
+    }
+
+    private String nextId(){
+        next = (next + 1) & (transactionIds.length - 1);
+        return transactionIds[next];
+    }
+
+    @Benchmark
+    public byte[] resultJsonTuple(){
+        Map.Entry<String, String> entry = Tuple2.tuple2(cardNumber, FraudPipeline.resultJson(nextId(), (next & 7) != 0));
+        return entry.getValue().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Map.Entry<String, String> tuple2(){
+        return Tuple2.tuple2(cardNumber, nextId());
+    }
+
+    @Benchmark
+    public byte[] encodeJson(){
+        return ApprovalCodec.encodeJson(nextId(), (next & 7) != 0);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary(){
+        return ApprovalCodec.encodeBinary(nextId(), (next & 7) != 0);
+    }
+}
@@ -0,0 +1,64 @@
+package hazelcast.platform.labs.payments.benchmarks;
+
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import hazelcast.platform.labs.payments.PipelineOptions;
+import hazelcast.platform.labs.payments.domain.Names;
+
+import java.util.Set;
+
+/*
+ * Loads the "cards" map into an embedded member with each kind of key (see FraudPipeline.CARD_KEY_OPTION)
+ * and reports the memory used per entry, both as Hazelcast accounts for it (the owned entry memory
+ * cost from the map's local stats) and as the growth of the used heap after a full GC.
+ *
+ * Arguments are name=value settings
+ *
+ *   cards  the number of cards to load (default 1000000)
+ *   keys   comma separated list of key kinds to measure, "string" and/or "long" (default both)
+ *
+ * Give the JVM enough heap for the largest run, e.g.
+ *
+ *   java -Xmx4g -cp benchmarks/target/benchmarks.jar hazelcast.platform.labs.payments.benchmarks.CardMapFootprint \
+ *       cards=10000000
+ */
+public class CardMapFootprint {
+    public static void main(String []args) throws InterruptedException {
+        PipelineOptions options = PipelineOptions.parse(args, 0).checkNames(Set.of("cards", "keys"));
+        int cardCount = options.getInt("cards", 1000000);
+        String []keys = options.getString("keys", "string,long").split(",");
+
+        if (System.getProperty("hazelcast.logging.type") == null)
+            System.setProperty("hazelcast.logging.type", "none");
+
+        HazelcastInstance hz = Hazelcast.newHazelcastInstance(PipelineHarness.memberConfig());
+        try {
+            System.out.printf("%8s %12s %18s %16s%n", "key", "cards", "entry cost B/card", "heap B/card");
+            for (String key : keys) {
+                IMap<Object, Object> cards = hz.getMap(Names.CARD_MAP_NAME);
+                cards.destroy();
+                cards = hz.getMap(Names.CARD_MAP_NAME);
+
+                long heapBefore = usedHeap();
+                PipelineHarness.loadCards(cards, cardCount, key.trim().equals("long"));
+                long heapAfter = usedHeap();
+                long entryCost = cards.getLocalMapStats().getOwnedEntryMemoryCost();
+
+                System.out.printf("%8s %12d %18.1f %16.1f%n", key.trim(), cardCount,
+                        (double) entryCost / cardCount, (double) (heapAfter - heapBefore) / cardCount);
+            }
+        } finally {
+            hz.shutdown();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,41 @@
+package hazelcast.platform.labs.payments.benchmarks;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.internal.serialization.Data;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import hazelcast.platform.labs.payments.domain.Card;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compact serialization of Card, as stored in the "cards" map and read by the card check
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CardSerializationBenchmark {
+    private InternalSerializationService serializationService;
+    private Card card;
+    private Data data;
+
+    @Setup
+    public void setup(){
+        serializationService = Serialization.serializationService(new SerializationConfig());
+        card = Card.withNumber("4359-2592-9290-3110");
+        data = serializationService.toData(card);
+    }
+
+    @Benchmark
+    public Data serialize(){
+        return serializationService.toData(card);
+    }
+
+    @Benchmark
+    public Card deserialize(){
+        return serializationService.toObject(data);
+    }
+}
@@ -0,0 +1,65 @@
+package hazelcast.platform.labs.payments.benchmarks;
+
+import hazelcast.platform.labs.payments.VelocityState;
+import hazelcast.platform.labs.payments.domain.Approval;
+import hazelcast.platform.labs.payments.domain.DeclineReason;
+import hazelcast.platform.labs.payments.domain.Transaction;
+import hazelcast.platform.labs.payments.domain.TransactionCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The decision part of FraudPipeline, per event
+ *
+ * amountRule   - the LAB 2 rule (decline over 5000) producing the Approval
+ * velocityRule - a VelocityState update and check, as done in the "check velocity" stage, spread
+ *                over 4096 cards
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecisionBenchmark {
+    private static final long BUCKET_MS = 10_000;
+
+    private Transaction []transactions;
+    private VelocityState []states;
+    private long now;
+    private int next;
+
+    @Setup
+    public void setup(){
+        TransactionCodec codec = new TransactionCodec();
+        String []json = SampleData.transactionJson(4096);
+        transactions = new Transaction[json.length];
+        states = new VelocityState[json.length];
+        for (int i = 0; i < json.length; ++i) {
+            transactions[i] = codec.decode(json[i].getBytes(StandardCharsets.UTF_8));
+            states[i] = new VelocityState(6);
+        }
+        now = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public Approval amountRule(){
+        next = (next + 1) & (transactions.length - 1);
+        Transaction txn = transactions[next];
+        return new Approval(txn.getCardNumber(), txn.getTransactionId(), txn.getAmount() <= 5000);
+    }
+
+    @Benchmark
+    public DeclineReason velocityRule(){
+        next = (next + 1) & (transactions.length - 1);
+        Transaction txn = transactions[next];
+        VelocityState state = states[next];
+        now += 7;   // 7ms of event time per event
+        state.add(now, txn.getAmount(), BUCKET_MS);
+        if (state.count() > 10) return DeclineReason.VELOCITY_COUNT;
+        if (state.amount() > 1000000) return DeclineReason.VELOCITY_AMOUNT;
+        return null;
+    }
+}
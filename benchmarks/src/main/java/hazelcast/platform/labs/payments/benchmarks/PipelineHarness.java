@@ -0,0 +1,247 @@
+package hazelcast.platform.labs.payments.benchmarks;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.jet.Job;
+import com.hazelcast.jet.config.JobConfig;
+import com.hazelcast.jet.core.JobStatus;
+import com.hazelcast.jet.core.metrics.JobMetrics;
+import com.hazelcast.jet.core.metrics.Measurement;
+import com.hazelcast.jet.core.metrics.MetricNames;
+import com.hazelcast.jet.pipeline.Pipeline;
+import com.hazelcast.jet.pipeline.Sink;
+import com.hazelcast.jet.pipeline.SinkBuilder;
+import com.hazelcast.jet.pipeline.SourceBuilder;
+import com.hazelcast.jet.pipeline.StreamSource;
+import com.hazelcast.map.IMap;
+import hazelcast.platform.labs.LatencyHistogram;
+import hazelcast.platform.labs.payments.FraudPipeline;
+import hazelcast.platform.labs.payments.PipelineOptions;
+import hazelcast.platform.labs.payments.RawTransaction;
+import hazelcast.platform.labs.payments.domain.ApprovalCodec;
+import hazelcast.platform.labs.payments.domain.Card;
+import hazelcast.platform.labs.payments.domain.CardNumberGenerator;
+import hazelcast.platform.labs.payments.domain.Names;
+import hazelcast.platform.labs.payments.domain.PackedCard;
+import hazelcast.platform.labs.payments.domain.TransactionCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Runs the whole fraud pipeline in an embedded member, without Kafka, and reports end-to-end
+ * throughput and latency.
+ *
+ * The source generates transactions at a fixed rate. Each transaction's id is the System.nanoTime at
+ * which it was *scheduled* to be sent, not the time it was actually sent, so when the pipeline (or the
+ * generator) falls behind, the queueing delay shows up in the latency instead of being hidden
+ * (coordinated omission).  The sink reads the id back out of the approval and records
+ * now - scheduled time in a LatencyHistogram.
+ *
+ * Arguments are name=value settings.  Everything that FraudPipeline accepts (see the *_OPTION
+ * constants) is passed through to the pipeline, plus
+ *
+ *   rates            comma separated list of offered rates, in transactions per second, to run one after
+ *                    the other (default 10000)
+ *   warmupSeconds    how long to run each rate before measuring (default 5)
+ *   durationSeconds  how long to measure each rate (default 30)
+ *   cards            the number of cards to load and generate transactions for (default 100000)
+ *   maxP99Ms         a rate is reported as saturated if the achieved rate is less than 95% of the
+ *                    offered rate or p99 latency is above this (default 100)
+ *   snapshotIntervalMs  the job's snapshot interval (default 1000). The processing guarantee is
+ *                    FraudPipeline's guarantee option, exactly_once unless given.
+ *
+ * The snapshot columns are the size of the last snapshot, summed over all processors, and the number
+ * of keys in it, e.g. cards with velocity state. "degraded" is the share of decisions
+ * made on the load shedding fast path (FraudPipeline.SHED_LAG_MS_OPTION) over the whole run.
+ *
+ * For example
+ *
+ *   java -cp benchmarks/target/benchmarks.jar hazelcast.platform.labs.payments.benchmarks.PipelineHarness \
+ *       rates=10000,50000,100000,200000 output=binary card.nearCache=10000
+ */
+public class PipelineHarness {
+    private static final LatencyHistogram LATENCY = new LatencyHistogram();
+    private static final AtomicLong COMPLETED = new AtomicLong();
+
+    private static final int MAX_EVENTS_PER_FILL = 1024;
+
+    private static final Set<String> OPTION_NAMES = new TreeSet<>(FraudPipeline.OPTION_NAMES);
+    static {
+        OPTION_NAMES.addAll(Set.of("rates", "warmupSeconds", "durationSeconds", "cards", "maxP99Ms",
+                "snapshotIntervalMs"));
+    }
+
+    public static void main(String []args) throws InterruptedException {
+        PipelineOptions options = PipelineOptions.parse(args, 0).checkNames(OPTION_NAMES);
+        String []rates = options.getString("rates", "10000").split(",");
+        long warmupSeconds = options.getLong("warmupSeconds", 5);
+        long durationSeconds = options.getLong("durationSeconds", 30);
+        int cardCount = options.getInt("cards", 100000);
+        long maxP99Ms = options.getLong("maxP99Ms", 100);
+        long snapshotIntervalMs = options.getLong("snapshotIntervalMs", 1000);
+        ApprovalCodec.Format format = ApprovalCodec.format(options.getString(FraudPipeline.OUTPUT_FORMAT_OPTION, "json"));
+
+        if (System.getProperty("hazelcast.logging.type") == null)
+            System.setProperty("hazelcast.logging.type", "none");
+
+        HazelcastInstance hz = Hazelcast.newHazelcastInstance(memberConfig());
+        try {
+            loadCards(hz.getMap(Names.CARD_MAP_NAME), cardCount, FraudPipeline.packedCardKeys(options));
+
+            System.out.println("Processing guarantee " + FraudPipeline.processingGuarantee(options)
+                    + ", snapshot every " + snapshotIntervalMs + "ms");
+            System.out.printf("%12s %12s %10s %10s %10s %10s %12s %14s %10s%n",
+                    "offered/s", "achieved/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms",
+                    "snapshot KB", "snapshot keys", "degraded");
+            for (String rate : rates) {
+                long offered = Long.parseLong(rate.trim());
+                Pipeline pipeline = FraudPipeline.createPipeline(
+                        source(offered, cardCount), sink(format), options);
+                pipeline.setPreserveOrder(false);
+
+                JobConfig jobConfig = new JobConfig();
+                jobConfig.setName("Fraud Checker Harness " + offered);
+                options.copyTo(jobConfig);
+                jobConfig.setProcessingGuarantee(FraudPipeline.processingGuarantee(options));
+                jobConfig.setSnapshotIntervalMillis(snapshotIntervalMs);
+                FraudPipeline.registerSerializers(jobConfig);
+                Job job = hz.getJet().newJob(pipeline, jobConfig);
+                while (job.getStatus() != JobStatus.RUNNING) Thread.sleep(10);
+
+                TimeUnit.SECONDS.sleep(warmupSeconds);
+                LATENCY.reset();
+                COMPLETED.set(0);
+                TimeUnit.SECONDS.sleep(durationSeconds);
+                long completed = COMPLETED.get();
+                long p50 = LATENCY.valueAtPercentile(50);
+                long p99 = LATENCY.valueAtPercentile(99);
+                long p999 = LATENCY.valueAtPercentile(99.9);
+                long max = LATENCY.max();
+                JobMetrics metrics = job.getMetrics();
+                long snapshotBytes = sum(metrics, MetricNames.SNAPSHOT_BYTES);
+                long snapshotKeys = sum(metrics, MetricNames.SNAPSHOT_KEYS);
+                long decisions = sum(metrics, "approvals") + sum(metrics, "declines");
+                long degraded = sum(metrics, "degradedDecisions");
+
+                job.cancel();
+                try {
+                    job.join();
+                } catch (RuntimeException x) {
+                    // expected, the job was cancelled
+                }
+
+                double achieved = (double) completed / durationSeconds;
+                boolean saturated = achieved < 0.95 * offered || p99 > maxP99Ms * 1_000_000L;
+                System.out.printf("%12d %12.0f %10.2f %10.2f %10.2f %10.2f %12d %14d %9.1f%%%s%n",
+                        offered, achieved, p50 / 1e6, p99 / 1e6, p999 / 1e6, max / 1e6,
+                        snapshotBytes / 1024, snapshotKeys,
+                        decisions == 0 ? 0.0 : 100.0 * degraded / decisions,
+                        saturated ? "  SATURATED" : "");
+            }
+        } finally {
+            hz.shutdown();
+        }
+    }
+
+    private static long sum(JobMetrics metrics, String name){
+        return metrics.get(name).stream().mapToLong(Measurement::value).sum();
+    }
+
+    static Config memberConfig(){
+        Config config = new Config();
+        config.setClusterName("fraud-pipeline-harness");
+        config.getJetConfig().setEnabled(true);
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getJoin().getAutoDetectionConfig().setEnabled(false);
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        return config;
+    }
+
+    /*
+     * Loads the cards keyed as the pipeline expects, see FraudPipeline.CARD_KEY_OPTION
+     */
+    static void loadCards(IMap<Object, Object> cards, int cardCount, boolean packedKeys){
+        long start = System.currentTimeMillis();
+        CardNumberGenerator generator = new CardNumberGenerator(CardNumberGenerator.DEFAULT_SEED);
+        Map<Object, Object> batch = new HashMap<>();
+        for (long i = 0; i < cardCount; ++i) {
+            if (packedKeys) {
+                long cardNumber = generator.numberAt(i);
+                batch.put(cardNumber, PackedCard.withNumber(cardNumber));
+            } else {
+                String cardNumber = generator.cardNumberAt(i);
+                batch.put(cardNumber, Card.withNumber(cardNumber));
+            }
+            if (batch.size() == 10000) {
+                cards.putAll(batch);
+                batch.clear();
+            }
+        }
+        cards.putAll(batch);
+        System.out.printf("Loaded %d cards in %dms%n", cardCount, System.currentTimeMillis() - start);
+    }
+
+    /*
+     * A single generator for the whole job so that the offered rate is exact.
+     */
+    private static StreamSource<RawTransaction> source(long ratePerSecond, int cardCount){
+        return SourceBuilder.timestampedStream("generated transactions",
+                        ctx -> new TransactionGenerator(ratePerSecond, cardCount))
+                .<RawTransaction>fillBufferFn(TransactionGenerator::fill)
+                .build();
+    }
+
+    private static Sink<Map.Entry<String, byte[]>> sink(ApprovalCodec.Format format){
+        return SinkBuilder.sinkBuilder("record latency", ctx -> new TransactionCodec())
+                .<Map.Entry<String, byte[]>>receiveFn((codec, approval) -> {
+                    String transactionId = format == ApprovalCodec.Format.BINARY
+                            ? ApprovalCodec.transactionId(approval.getValue())
+                            : codec.decode(approval.getValue()).getTransactionId();
+                    LATENCY.record(System.nanoTime() - Long.parseLong(transactionId));
+                    COMPLETED.incrementAndGet();
+                })
+                .build();
+    }
+
+    private static class TransactionGenerator {
+        private final double nanosPerEvent;
+        private final int cardCount;
+        private final CardNumberGenerator cardNumbers = new CardNumberGenerator(CardNumberGenerator.DEFAULT_SEED);
+        private final Random random = new Random(42);
+        private final StringBuilder json = new StringBuilder(128);
+        private final long startNanos = System.nanoTime();
+        private long emitted;
+
+        TransactionGenerator(long ratePerSecond, int cardCount) {
+            this.nanosPerEvent = 1e9 / ratePerSecond;
+            this.cardCount = cardCount;
+        }
+
+        void fill(SourceBuilder.TimestampedSourceBuffer<RawTransaction> buffer){
+            long due = (long) ((System.nanoTime() - startNanos) / nanosPerEvent) - emitted;
+            long now = System.currentTimeMillis();
+            for (long i = Math.min(due, MAX_EVENTS_PER_FILL); i > 0; --i) {
+                long scheduled = startNanos + (long) (emitted * nanosPerEvent);
+                String cardNumber = cardNumbers.cardNumberAt(random.nextInt(cardCount));
+
+                json.setLength(0);
+                json.append("{\"card_number\": \"").append(cardNumber)
+                        .append("\", \"transaction_id\": \"").append(scheduled)
+                        .append("\", \"amount\": ").append(SampleData.amount(random))
+                        .append(", \"merchant_id\": \"").append(random.nextInt(9999))
+                        .append("\"}");
+
+                buffer.add(new RawTransaction(cardNumber, json.toString().getBytes(StandardCharsets.UTF_8), now), now);
+                ++emitted;
+            }
+        }
+    }
+}
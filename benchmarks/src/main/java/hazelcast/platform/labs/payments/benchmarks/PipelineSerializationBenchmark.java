@@ -0,0 +1,114 @@
+package hazelcast.platform.labs.payments.benchmarks;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.internal.serialization.Data;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.jet.datamodel.Tuple3;
+import hazelcast.platform.labs.payments.ApprovalStreamSerializer;
+import hazelcast.platform.labs.payments.TransactionStreamSerializer;
+import hazelcast.platform.labs.payments.VelocityState;
+import hazelcast.platform.labs.payments.domain.Approval;
+import hazelcast.platform.labs.payments.domain.CompactSerializers;
+import hazelcast.platform.labs.payments.domain.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Serialization of what the fraud pipeline sends between members and writes to snapshots: the
+ * Transaction, the decision and the per-card velocity state.
+ *
+ *   current   what the pipeline used before: zero-config Compact for Transaction, the decision as a
+ *             Tuple3 and Java serialization for the state
+ *   compact   the Compact serializers in CompactSerializers, which have to be in the member
+ *             configuration, and the state serializers
+ *   job       what the job uses: the serializers that FraudPipeline.registerSerializers adds to it
+ *
+ * The serialized sizes are printed during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineSerializationBenchmark {
+    @Param({"current", "compact", "job"})
+    public String mode;
+
+    private InternalSerializationService serializationService;
+    private Transaction transaction;
+    private Object decision;
+    private VelocityState velocity;
+    private Data transactionData;
+    private Data decisionData;
+    private Data velocityData;
+
+    @Setup
+    public void setup(){
+        SerializationConfig config = new SerializationConfig();
+        if (mode.equals("compact")) CompactSerializers.register(config);
+        if (mode.equals("job")) {
+            config.addSerializerConfig(new SerializerConfig()
+                    .setTypeClass(Transaction.class).setImplementation(new TransactionStreamSerializer()));
+            config.addSerializerConfig(new SerializerConfig()
+                    .setTypeClass(Approval.class).setImplementation(new ApprovalStreamSerializer()));
+        }
+        if (!mode.equals("current"))
+            config.addSerializerConfig(new SerializerConfig()
+                    .setTypeClass(VelocityState.class).setImplementation(new VelocityState.Serializer()));
+        serializationService = Serialization.serializationService(config);
+
+        transaction = new Transaction();
+        transaction.setCardNumber("4359-2592-9290-3110");
+        transaction.setTransactionId("1702339620123456789");
+        transaction.setAmount(1234);
+        transaction.setMerchantId("2217");
+        transaction.setTimestamp(1702339620123L);
+
+        decision = !mode.equals("current")
+                ? new Approval(transaction.getCardNumber(), transaction.getTransactionId(), true)
+                : Tuple3.tuple3(transaction.getCardNumber(), transaction.getTransactionId(), true);
+
+        velocity = new VelocityState(6);
+        for (int i = 0; i < 3; ++i)
+            velocity.add(transaction.getTimestamp() + i * 1000L, 100 * i, 10000);
+
+        transactionData = serializationService.toData(transaction);
+        decisionData = serializationService.toData(decision);
+        velocityData = serializationService.toData(velocity);
+        System.out.printf("%n%s serialized bytes: transaction %d, decision %d, velocity state %d%n",
+                mode, transactionData.totalSize(), decisionData.totalSize(), velocityData.totalSize());
+    }
+
+    @Benchmark
+    public Data serializeTransaction(){
+        return serializationService.toData(transaction);
+    }
+
+    @Benchmark
+    public Transaction deserializeTransaction(){
+        return serializationService.toObject(transactionData);
+    }
+
+    @Benchmark
+    public Data serializeDecision(){
+        return serializationService.toData(decision);
+    }
+
+    @Benchmark
+    public Object deserializeDecision(){
+        return serializationService.toObject(decisionData);
+    }
+
+    @Benchmark
+    public Data serializeVelocityState(){
+        return serializationService.toData(velocity);
+    }
+
+    @Benchmark
+    public VelocityState deserializeVelocityState(){
+        return serializationService.toObject(velocityData);
+    }
+}
@@ -0,0 +1,64 @@
+package hazelcast.platform.labs.payments.benchmarks;
+
+import hazelcast.platform.labs.payments.RuleSet;
+import hazelcast.platform.labs.payments.domain.Transaction;
+import hazelcast.platform.labs.payments.domain.TransactionCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The cost per event of the "check rules" stage, for rule sets of different sizes
+ *
+ * rules     - RuleSet.firstMatch with ruleCount rules of the form "merchant == N and amount > 1000".
+ *             Few transactions match any of them, so nearly every rule is evaluated for every event,
+ *             which is the worst case.
+ * hardCoded - the same check as one rule would make, written as Java (amount > 5000), for comparison
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuleSetBenchmark {
+    @Param({"1", "10", "100"})
+    public int ruleCount;
+
+    private Transaction []transactions;
+    private RuleSet ruleSet;
+    private int next;
+
+    @Setup
+    public void setup(){
+        TransactionCodec codec = new TransactionCodec();
+        String []json = SampleData.transactionJson(4096);
+        transactions = new Transaction[json.length];
+        for (int i = 0; i < json.length; ++i) {
+            transactions[i] = codec.decode(json[i].getBytes(StandardCharsets.UTF_8));
+            transactions[i].setTimestamp(1710969754000L + i * 1000L);
+        }
+
+        Map<String, String> definitions = new HashMap<>();
+        for (int r = 0; r < ruleCount; ++r)
+            definitions.put(String.format("rule_%03d", r), "merchant == " + (r * 97) + " and amount > 1000");
+
+        ruleSet = RuleSet.compile(definitions);
+        if (ruleSet.size() != ruleCount) throw new IllegalStateException("Rules rejected: " + ruleSet.rejected());
+    }
+
+    @Benchmark
+    public int rules(){
+        next = (next + 1) & (transactions.length - 1);
+        return ruleSet.firstMatch(transactions[next]);
+    }
+
+    @Benchmark
+    public boolean hardCoded(){
+        next = (next + 1) & (transactions.length - 1);
+        return transactions[next].getAmount() > 5000;
+    }
+}
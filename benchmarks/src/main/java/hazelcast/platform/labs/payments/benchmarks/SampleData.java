@@ -0,0 +1,38 @@
+package hazelcast.platform.labs.payments.benchmarks;
+
+import hazelcast.platform.labs.payments.domain.Transaction;
+
+import java.util.Random;
+
+/*
+ * Generates messages that look like the ones produced by event-generator/event_generator.py. A fixed
+ * seed keeps runs comparable.
+ */
+public class SampleData {
+    private static final long SEED = 42L;
+
+    public static String []transactionJson(int count){
+        Random random = new Random(SEED);
+        String []result = new String[count];
+        for (int i = 0; i < count; ++i)
+            result[i] = transactionJson(cardNumber(random), 1710969754L + i, amount(random), random.nextInt(9999));
+
+        return result;
+    }
+
+    public static String transactionJson(String cardNumber, long transactionId, int amount, int merchantId){
+        // same layout as python's json.dumps
+        return String.format("{\"card_number\": \"%s\", \"transaction_id\": \"%010d\", \"amount\": %d, \"merchant_id\": \"%04d\"}",
+                cardNumber, transactionId, amount, merchantId);
+    }
+
+    public static String cardNumber(Random random){
+        return String.format("%04d-%04d-%04d-%04d",
+                random.nextInt(10000), random.nextInt(10000), random.nextInt(10000), random.nextInt(10000));
+    }
+
+    // the same distribution as fake_txn in event_generator.py
+    public static int amount(Random random){
+        return Transaction.fakeAmount(random);
+    }
+}
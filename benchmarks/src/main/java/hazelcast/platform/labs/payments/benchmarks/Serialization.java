@@ -0,0 +1,46 @@
+package hazelcast.platform.labs.payments.benchmarks;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import com.hazelcast.internal.serialization.impl.compact.Schema;
+import com.hazelcast.internal.serialization.impl.compact.SchemaService;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Builds a stand-alone Hazelcast SerializationService so that serialization can be measured without
+ * starting a member. Compact serialization normally registers schemas with the cluster; here they
+ * are simply kept in memory.
+ *
+ * This uses Hazelcast internal classes, which is fine for a benchmark but should not be copied into
+ * application code.
+ */
+public class Serialization {
+    public static InternalSerializationService serializationService(SerializationConfig config){
+        return new DefaultSerializationServiceBuilder()
+                .setConfig(config)
+                .setSchemaService(new InMemorySchemaService())
+                .build();
+    }
+
+    private static class InMemorySchemaService implements SchemaService {
+        private final Map<Long, Schema> schemas = new ConcurrentHashMap<>();
+
+        @Override
+        public Schema get(long schemaId) {
+            return schemas.get(schemaId);
+        }
+
+        @Override
+        public void put(Schema schema) {
+            schemas.put(schema.getSchemaId(), schema);
+        }
+
+        @Override
+        public void putLocal(Schema schema) {
+            put(schema);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package hazelcast.platform.labs.payments.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hazelcast.platform.labs.payments.domain.Transaction;
+import hazelcast.platform.labs.payments.domain.TransactionCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compares the ways FraudPipeline can turn a message into a Transaction
+ *
+ * jacksonString  - ObjectMapper.readValue(String), what the pipeline originally did
+ * jacksonBytes   - ObjectMapper.readValue(byte[]), the "parser=jackson" option
+ * codec          - TransactionCodec.decode(byte[]), the "parser=codec" option
+ *
+ * Run with "-prof gc" to see bytes allocated per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionParseBenchmark {
+    private ObjectMapper mapper;
+    private TransactionCodec codec;
+
+    private String []messages;
+    private byte[][] messageBytes;
+    private int next;
+
+    @Setup
+    public void setup(){
+        mapper = new ObjectMapper();
+        codec = new TransactionCodec();
+
+        messages = SampleData.transactionJson(1024);
+        messageBytes = new byte[messages.length][];
+        for (int i = 0; i < messages.length; ++i) messageBytes[i] = messages[i].getBytes(StandardCharsets.UTF_8);
+    }
+
+    private int nextIndex(){
+        next = (next + 1) & (messages.length - 1);
+        return next;
+    }
+
+    @Benchmark
+    public Transaction jacksonString() throws IOException {
+        return mapper.readValue(messages[nextIndex()], Transaction.class);
+    }
+
+    @Benchmark
+    public Transaction jacksonBytes() throws IOException {
+        return mapper.readValue(messageBytes[nextIndex()], Transaction.class);
+    }
+
+    @Benchmark
+    public Transaction codec(){
+        return codec.decode(messageBytes[nextIndex()]);
+    }
+}
@@ -0,0 +1,88 @@
+package hazelcast.platform.labs;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * A fixed-bucket, lock-free histogram of non-negative long values (typically latencies in
+ * nanoseconds or milliseconds).
+ *
+ * Buckets are log-linear: values below 32 each get their own bucket and every power of two above that
+ * is split into 32 equal buckets, so any recorded value is reported to within about 3%. That needs
+ * fewer than 2000 buckets for the whole long range, allocated once.  Recording is a couple of shifts
+ * and one atomic increment, with no allocation and no locks, so it can be shared by many threads on a
+ * hot path.
+ *
+ * Percentiles are computed from a racy but consistent-enough walk over the buckets; a reader running
+ * concurrently with writers may see some in-flight values and not others.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS + 1);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long value){
+        counts.incrementAndGet(bucketOf(Math.max(0, value)));
+    }
+
+    public long count(){
+        long result = 0;
+        for (int i = 0; i < BUCKETS; ++i) result += counts.get(i);
+        return result;
+    }
+
+    /*
+     * Returns the (upper bound of the bucket containing the) value at the given percentile, e.g.
+     * 99.9. Returns 0 if nothing has been recorded.
+     */
+    public long valueAtPercentile(double percentile){
+        long []snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += snapshot[i];
+            if (seen >= rank) return upperBoundOf(i);
+        }
+        return upperBoundOf(BUCKETS - 1);
+    }
+
+    public long max(){
+        for (int i = BUCKETS - 1; i >= 0; --i)
+            if (counts.get(i) > 0) return upperBoundOf(i);
+
+        return 0;
+    }
+
+    /*
+     * Clears all counts. Values recorded concurrently with a reset may or may not survive it.
+     */
+    public void reset(){
+        for (int i = 0; i < BUCKETS; ++i) counts.set(i, 0);
+    }
+
+    static int bucketOf(long value){
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int bucket){
+        if (bucket < SUB_BUCKETS) return bucket;
+
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = ((long) (SUB_BUCKETS + sub)) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -5,72 +5,136 @@ import com.hazelcast.map.IMap;
 import com.hazelcast.map.listener.EntryAddedListener;
 import com.hazelcast.map.listener.EntryUpdatedListener;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/*
+ * Waits for entries in an IMap to have given values, typically status flags in "system_activities"
+ * such as LOADER_STATUS=FINISHED.
+ *
+ * awaitAll returns a future that completes once every key has been seen with its value, whether it
+ * was already there or is put later.  A condition that has been met stays met even if the entry
+ * changes again.  Nothing blocks while waiting: there is one entry listener per key, and all of them
+ * are removed when the future completes, including when it is cancelled or times out (e.g. with
+ * orTimeout).  So several waits can run at once, for example
+ *
+ *   MapWaiter.awaitAll(systemActivities, Map.of("LOADER_STATUS", "FINISHED", "JOB_STATUS", "RUNNING"))
+ *           .orTimeout(3, TimeUnit.MINUTES)
+ *           .join();
+ *
+ * waitForSignal is the blocking form for a single key.  Blocking in get parks the thread rather than
+ * holding a monitor, so it is also fine on a virtual thread.
+ */
 public class MapWaiter<K, V> {
 
     private final IMap<K, V> map;
     private final K awaitKey;
     private final V awaitVal;
 
-    private final AtomicBoolean done;
-
     public MapWaiter(IMap<K, V> map, K key, V val) {
         this.map = map;
         this.awaitKey = key;
         this.awaitVal = val;
-        this.done = new AtomicBoolean(false);
     }
 
+    public CompletableFuture<Void> await() {
+        return awaitAll(map, Map.of(awaitKey, awaitVal));
+    }
 
     public boolean waitForSignal(long timeoutMs) {
-        boolean result = false;
-        map.addEntryListener(new AwaitedEntryListener(), awaitKey, true);
-        V val = map.get(awaitKey);
-        if (val != null && val.equals(awaitVal)) {
-            System.out.println("Awaited value is present.");
-            result = true;
-        } else {
-            synchronized (done) {
-                try {
-                    System.out.println("Waiting...");
-                    done.wait(timeoutMs);
-                    if (done.get()) {
-                        result = true;
-                        System.out.println("Awaited key arrived.");
-                    } else {
-                        result = false;
-                        System.out.println("Awaited key never arrived. Wait timed out.");
-                    }
-                } catch (InterruptedException ix) {
-                    // this is main, we will be exiting either way
-                    System.out.println("Interrupted while waiting.");
-                    result = false;
-                }
-            }
+        System.out.println("Waiting...");
+        CompletableFuture<Void> signal = await().orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        try {
+            signal.get();
+            System.out.println("Awaited key arrived.");
+            return true;
+        } catch (ExecutionException x) {
+            if (x.getCause() instanceof TimeoutException)
+                System.out.println("Awaited key never arrived. Wait timed out.");
+            else
+                System.out.println("Wait failed: " + x.getCause());
+            return false;
+        } catch (InterruptedException ix) {
+            signal.cancel(false);
+            Thread.currentThread().interrupt();
+            System.out.println("Interrupted while waiting.");
+            return false;
+        }
+    }
+
+    /*
+     * Returns a future that completes when, for every entry in conditions, the map has had that key
+     * with that value.  An empty conditions map gives a completed future.
+     */
+    public static <K, V> CompletableFuture<Void> awaitAll(IMap<K, V> map, Map<K, V> conditions) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Set<K> pending = ConcurrentHashMap.newKeySet();
+        pending.addAll(conditions.keySet());
+        if (pending.isEmpty()) {
+            result.complete(null);
+            return result;
+        }
+
+        // listen before reading the current values so that nothing put in between is missed
+        List<UUID> listenerIds = new ArrayList<>(conditions.size());
+        Listener<K, V> listener = new Listener<>(conditions, pending, result);
+        try {
+            for (K key : conditions.keySet()) listenerIds.add(map.addEntryListener(listener, key, true));
+        } catch (RuntimeException x) {
+            result.completeExceptionally(x);
+        }
+
+        /*
+         * Removing a listener is a remote call, so it is done off the thread that completes the future,
+         * which may be a listener thread.
+         */
+        result.whenCompleteAsync((v, t) -> {
+            for (UUID id : listenerIds) map.removeEntryListener(id);
+        });
+
+        for (K key : conditions.keySet()) {
+            if (result.isDone()) break;
+
+            map.getAsync(key).whenComplete((value, t) -> {
+                if (t != null) result.completeExceptionally(t);
+                else listener.met(key, value);
+            });
         }
         return result;
     }
 
-    public class AwaitedEntryListener implements EntryAddedListener<K, V>, EntryUpdatedListener<K, V> {
-        private void handleEvent(EntryEvent<K, V> event) {
-            if (event.getKey().equals(awaitKey) && event.getValue().equals(awaitVal)) {
-                synchronized (done) {
-                    done.set(true);
-                    done.notify();
-                }
-            }
+    private static class Listener<K, V> implements EntryAddedListener<K, V>, EntryUpdatedListener<K, V> {
+        private final Map<K, V> conditions;
+        private final Set<K> pending;
+        private final CompletableFuture<Void> result;
+
+        Listener(Map<K, V> conditions, Set<K> pending, CompletableFuture<Void> result) {
+            this.conditions = conditions;
+            this.pending = pending;
+            this.result = result;
+        }
+
+        void met(K key, V value) {
+            if (value != null && value.equals(conditions.get(key)) && pending.remove(key) && pending.isEmpty())
+                result.complete(null);
         }
 
         @Override
         public void entryAdded(EntryEvent<K, V> event) {
-            handleEvent(event);
+            met(event.getKey(), event.getValue());
         }
 
         @Override
         public void entryUpdated(EntryEvent<K, V> event) {
-            handleEvent(event);
+            met(event.getKey(), event.getValue());
         }
     }
 }
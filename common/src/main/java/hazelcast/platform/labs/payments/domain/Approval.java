@@ -0,0 +1,38 @@
+package hazelcast.platform.labs.payments.domain;
+
+/*
+ * The decision for one transaction, as it leaves the fraud checks on its way to the sink.  The sink
+ * uses the card number as the message key and encodes the rest with ApprovalCodec.
+ */
+public class Approval {
+    private final String cardNumber;
+    private final String transactionId;
+    private final boolean approved;
+
+    public Approval(String cardNumber, String transactionId, boolean approved) {
+        this.cardNumber = cardNumber;
+        this.transactionId = transactionId;
+        this.approved = approved;
+    }
+
+    public String getCardNumber() {
+        return cardNumber;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public boolean isApproved() {
+        return approved;
+    }
+
+    @Override
+    public String toString() {
+        return "Approval{" +
+                "cardNumber='" + cardNumber + '\'' +
+                ", transactionId='" + transactionId + '\'' +
+                ", approved=" + approved +
+                '}';
+    }
+}
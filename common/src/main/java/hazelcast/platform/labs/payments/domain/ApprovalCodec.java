@@ -0,0 +1,148 @@
+package hazelcast.platform.labs.payments.domain;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Encodes approval messages directly into bytes, without building intermediate Strings.
+ *
+ * JSON is byte-for-byte what FraudPipeline.resultJson produces:
+ *
+ *   { "transaction_id": "12345", "approved": true}
+ *
+ * BINARY is a compact layout for consumers that do not need JSON.  All integers are big-endian.
+ *
+ *   offset 0   1 byte   format marker, always BINARY_MARKER (0x41)
+ *   offset 1   1 byte   approved, 1 = approved, 0 = declined
+ *   offset 2   2 bytes  length N of the transaction id in bytes (unsigned)
+ *   offset 4   N bytes  transaction id, UTF-8
+ *
+ * Each call returns a new array sized exactly for the message. The array is handed to the Kafka
+ * producer, which holds on to it until the record is sent, so it cannot be recycled by the caller.
+ * Callers that manage their own buffers can use the encodeXxx(..., byte[], int) variants.
+ */
+public class ApprovalCodec {
+    public enum Format { JSON, BINARY }
+
+    public static final byte BINARY_MARKER = 0x41;
+    public static final int BINARY_HEADER_LENGTH = 4;
+
+    private static final byte[] JSON_PREFIX = "{ \"transaction_id\": \"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_APPROVED = "\", \"approved\": true}".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_DECLINED = "\", \"approved\": false}".getBytes(StandardCharsets.US_ASCII);
+
+    public static Format format(String name){
+        return Format.valueOf(name.toUpperCase());
+    }
+
+    public static byte[] encode(Format format, String transactionId, boolean approved){
+        return format == Format.BINARY ? encodeBinary(transactionId, approved) : encodeJson(transactionId, approved);
+    }
+
+    public static byte[] encodeJson(String transactionId, boolean approved){
+        if (!isPlainAscii(transactionId)) return slowJson(transactionId, approved);
+
+        byte []result = new byte[jsonLength(transactionId.length(), approved)];
+        encodeJson(transactionId, approved, result, 0);
+        return result;
+    }
+
+    public static int jsonLength(int transactionIdLength, boolean approved){
+        return JSON_PREFIX.length + transactionIdLength + (approved ? JSON_APPROVED.length : JSON_DECLINED.length);
+    }
+
+    /*
+     * Writes the JSON form into dest and returns the number of bytes written. The transaction id
+     * must be plain ASCII (see isPlainAscii) and dest must have room for jsonLength bytes.
+     */
+    public static int encodeJson(String transactionId, boolean approved, byte []dest, int offset){
+        int pos = offset;
+        System.arraycopy(JSON_PREFIX, 0, dest, pos, JSON_PREFIX.length);
+        pos += JSON_PREFIX.length;
+        pos = writeAscii(transactionId, dest, pos);
+        byte []suffix = approved ? JSON_APPROVED : JSON_DECLINED;
+        System.arraycopy(suffix, 0, dest, pos, suffix.length);
+        pos += suffix.length;
+        return pos - offset;
+    }
+
+    public static byte[] encodeBinary(String transactionId, boolean approved){
+        if (!isPlainAscii(transactionId)) {
+            byte []id = transactionId.getBytes(StandardCharsets.UTF_8);
+            byte []result = new byte[BINARY_HEADER_LENGTH + id.length];
+            writeBinaryHeader(result, 0, approved, id.length);
+            System.arraycopy(id, 0, result, BINARY_HEADER_LENGTH, id.length);
+            return result;
+        }
+
+        byte []result = new byte[BINARY_HEADER_LENGTH + transactionId.length()];
+        encodeBinary(transactionId, approved, result, 0);
+        return result;
+    }
+
+    /*
+     * Writes the BINARY form into dest and returns the number of bytes written. The transaction id
+     * must be plain ASCII (see isPlainAscii).
+     */
+    public static int encodeBinary(String transactionId, boolean approved, byte []dest, int offset){
+        writeBinaryHeader(dest, offset, approved, transactionId.length());
+        int end = writeAscii(transactionId, dest, offset + BINARY_HEADER_LENGTH);
+        return end - offset;
+    }
+
+    public static boolean isApproved(byte []binary){
+        checkBinary(binary);
+        return binary[1] != 0;
+    }
+
+    public static String transactionId(byte []binary){
+        checkBinary(binary);
+        int length = ((binary[2] & 0xFF) << 8) | (binary[3] & 0xFF);
+        return new String(binary, BINARY_HEADER_LENGTH, length, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * True if every char is printable ASCII that needs no escaping in JSON.  Transaction ids from
+     * the event generator are always digits.
+     */
+    public static boolean isPlainAscii(String s){
+        if (s.length() > 0xFFFF) return false;
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c < 0x20 || c > 0x7E || c == '"' || c == '\\') return false;
+        }
+        return true;
+    }
+
+    private static void writeBinaryHeader(byte []dest, int offset, boolean approved, int idLength){
+        if (idLength > 0xFFFF) throw new IllegalArgumentException("Transaction id is too long");
+        dest[offset] = BINARY_MARKER;
+        dest[offset + 1] = (byte) (approved ? 1 : 0);
+        dest[offset + 2] = (byte) (idLength >>> 8);
+        dest[offset + 3] = (byte) idLength;
+    }
+
+    private static int writeAscii(String s, byte []dest, int offset){
+        int n = s.length();
+        for (int i = 0; i < n; ++i) dest[offset + i] = (byte) s.charAt(i);
+        return offset + n;
+    }
+
+    private static void checkBinary(byte []binary){
+        if (binary.length < BINARY_HEADER_LENGTH || binary[0] != BINARY_MARKER)
+            throw new IllegalArgumentException("Not a binary approval message");
+    }
+
+    // escapes the transaction id, only used for ids that are not plain ASCII
+    private static byte[] slowJson(String transactionId, boolean approved){
+        StringBuilder sb = new StringBuilder(transactionId.length() + 48);
+        sb.append("{ \"transaction_id\": \"");
+        for (int i = 0; i < transactionId.length(); ++i) {
+            char c = transactionId.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        sb.append(approved ? "\", \"approved\": true}" : "\", \"approved\": false}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
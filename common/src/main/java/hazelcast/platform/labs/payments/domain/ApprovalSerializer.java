@@ -0,0 +1,37 @@
+package hazelcast.platform.labs.payments.domain;
+
+import com.hazelcast.nio.serialization.compact.CompactReader;
+import com.hazelcast.nio.serialization.compact.CompactSerializer;
+import com.hazelcast.nio.serialization.compact.CompactWriter;
+
+/*
+ * Compact serialization of Approval, with the card number packed as in TransactionSerializer
+ */
+public class ApprovalSerializer implements CompactSerializer<Approval> {
+    static final String TYPE_NAME = "Approval";
+
+    @Override
+    public Approval read(CompactReader reader) {
+        return new Approval(
+                CardNumberField.read(reader),
+                reader.readString("transactionId"),
+                reader.readBoolean("approved"));
+    }
+
+    @Override
+    public void write(CompactWriter writer, Approval approval) {
+        CardNumberField.write(writer, approval.getCardNumber());
+        writer.writeString("transactionId", approval.getTransactionId());
+        writer.writeBoolean("approved", approval.isApproved());
+    }
+
+    @Override
+    public String getTypeName() {
+        return TYPE_NAME;
+    }
+
+    @Override
+    public Class<Approval> getCompactClass() {
+        return Approval.class;
+    }
+}
@@ -0,0 +1,41 @@
+package hazelcast.platform.labs.payments.domain;
+
+/*
+ * An entry in the "blocked_cards" map, keyed by card number. Transactions on a blocked card are
+ * always declined.
+ */
+public class BlockedCard {
+    String cardNumber;
+    String reason;
+
+    public String getCardNumber() {
+        return cardNumber;
+    }
+
+    public void setCardNumber(String cardNumber) {
+        this.cardNumber = cardNumber;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockedCard{" +
+                "cardNumber='" + cardNumber + '\'' +
+                ", reason='" + reason + '\'' +
+                '}';
+    }
+
+    public static BlockedCard of(String cardNumber, String reason){
+        BlockedCard result = new BlockedCard();
+        result.setCardNumber(cardNumber);
+        result.setReason(reason);
+        return result;
+    }
+}
@@ -1,6 +1,6 @@
 package hazelcast.platform.labs.payments.domain;
 
-import com.github.javafaker.Faker;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Card {
     String cardNumber;
@@ -20,15 +20,20 @@ public class Card {
                 '}';
     }
 
-    private static Faker faker = new Faker();
-    public static Card fake(){
+    public static Card withNumber(String cardNumber){
         Card result = new Card();
-        String cc = faker.finance().creditCard();
-        while(cc.length() != 19)
-            cc = faker.finance().creditCard();
-
-        result.setCardNumber(cc);
+        result.setCardNumber(cardNumber);
         return result;
     }
 
+    /*
+     * Returns a card with a random, valid card number. Card numbers are unique within this JVM.
+     * Use a CardNumberGenerator with a known seed for repeatable card numbers.
+     */
+    private static final CardNumberGenerator generator =
+            new CardNumberGenerator(ThreadLocalRandom.current().nextLong());
+    public static Card fake(){
+        return withNumber(generator.next());
+    }
+
 }
@@ -0,0 +1,22 @@
+package hazelcast.platform.labs.payments.domain;
+
+import com.hazelcast.nio.serialization.compact.CompactReader;
+import com.hazelcast.nio.serialization.compact.CompactWriter;
+
+/*
+ * A card number as two Compact fields: "cardNumber", the packed number as an int64, and
+ * "cardNumberText", which is only set (and "cardNumber" is -1) when the card number is not in the
+ * NNNN-NNNN-NNNN-NNNN format and so can't be packed.  A null string costs only its offset.
+ */
+class CardNumberField {
+    static void write(CompactWriter writer, String cardNumber){
+        long packed = CardNumbers.tryPack(cardNumber);
+        writer.writeInt64("cardNumber", packed);
+        writer.writeString("cardNumberText", packed < 0 ? cardNumber : null);
+    }
+
+    static String read(CompactReader reader){
+        long packed = reader.readInt64("cardNumber");
+        return packed < 0 ? reader.readString("cardNumberText") : CardNumbers.format(packed);
+    }
+}
@@ -0,0 +1,75 @@
+package hazelcast.platform.labs.payments.domain;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Generates valid (Luhn checked) 16 digit card numbers that start with PREFIX.
+ *
+ * The card number for index i is a fixed, seed dependent permutation of i, so
+ *
+ * - the same seed and index always give the same card number, on any thread or machine
+ * - different indexes always give different card numbers (for up to 10^14 indexes), so there are
+ *   no collisions to retry or to silently lose
+ *
+ * That makes it easy to split the work: each thread, or each loader process, can take its own range
+ * of indexes. Instances are immutable apart from the counter used by next(), so they are thread safe.
+ */
+public class CardNumberGenerator {
+    public static final long DEFAULT_SEED = 0x5eed_ca4dL;
+
+    private static final int PREFIX = 4;
+    private static final long MODULUS = 100_000_000_000_000L;    // 10^14 numbers after the prefix
+
+    private final long offset;
+    private final long multiplier;
+    private final AtomicLong nextIndex = new AtomicLong();
+
+    public CardNumberGenerator(long seed) {
+        // spread the seed, then derive a multiplier that is coprime to 10^14 (odd, not a multiple of 5)
+        long mixed = mix(seed);
+        this.offset = Math.floorMod(mixed, MODULUS);
+        long m = Math.floorMod(mix(mixed), MODULUS) | 1;
+        if (m % 5 == 0) m += 2;
+        this.multiplier = m;
+    }
+
+    /*
+     * The card number for the given index as a long, see CardNumbers
+     */
+    public long numberAt(long index){
+        long body = Math.floorMod(offset + mulMod(Math.floorMod(index, MODULUS), multiplier), MODULUS);
+        long payload = PREFIX * MODULUS + body;
+        return payload * 10 + CardNumbers.luhnCheckDigit(payload);
+    }
+
+    /*
+     * The card number for the given index in "NNNN-NNNN-NNNN-NNNN" format
+     */
+    public String cardNumberAt(long index){
+        return CardNumbers.format(numberAt(index));
+    }
+
+    /*
+     * The next card number from this instance's own counter.  Unique across all threads using this
+     * instance.
+     */
+    public String next(){
+        return cardNumberAt(nextIndex.getAndIncrement());
+    }
+
+    // (a * b) mod MODULUS without overflow, for 0 <= a, b < MODULUS < 2^47
+    private static long mulMod(long a, long b){
+        long q = (long) ((double) a * (double) b / (double) MODULUS);
+        long r = a * b - q * MODULUS;   // exact modulo 2^64, and the true remainder is small
+        while (r < 0) r += MODULUS;
+        while (r >= MODULUS) r -= MODULUS;
+        return r;
+    }
+
+    // the SplitMix64 finalizer
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
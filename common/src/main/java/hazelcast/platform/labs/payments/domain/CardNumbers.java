@@ -0,0 +1,82 @@
+package hazelcast.platform.labs.payments.domain;
+
+/*
+ * Helpers for 16 digit card numbers.  The String form is the one used throughout the lab,
+ * "NNNN-NNNN-NNNN-NNNN". Because a card number is just 16 digits it also fits in a long.
+ */
+public class CardNumbers {
+    public static final int DIGITS = 16;
+    public static final int FORMATTED_LENGTH = 19;
+
+    /*
+     * Formats a 16 digit number as "NNNN-NNNN-NNNN-NNNN"
+     */
+    public static String format(long number){
+        if (number < 0 || number >= 10_000_000_000_000_000L)
+            throw new IllegalArgumentException("Not a 16 digit card number: " + number);
+
+        char []result = new char[FORMATTED_LENGTH];
+        long n = number;
+        for (int i = FORMATTED_LENGTH - 1; i >= 0; --i) {
+            if (i == 4 || i == 9 || i == 14) {
+                result[i] = '-';
+            } else {
+                result[i] = (char) ('0' + n % 10);
+                n /= 10;
+            }
+        }
+        return new String(result);
+    }
+
+    /*
+     * Parses "NNNN-NNNN-NNNN-NNNN" into a long.
+     */
+    public static long pack(String cardNumber){
+        long result = tryPack(cardNumber);
+        if (result < 0) throw new IllegalArgumentException("Not a formatted card number: " + cardNumber);
+
+        return result;
+    }
+
+    /*
+     * Like pack, but returns -1 instead of throwing when cardNumber is null or not in the
+     * "NNNN-NNNN-NNNN-NNNN" format.  For the per-event code, where an exception would be expensive.
+     */
+    public static long tryPack(String cardNumber){
+        if (cardNumber == null || cardNumber.length() != FORMATTED_LENGTH) return -1;
+
+        long result = 0;
+        for (int i = 0; i < FORMATTED_LENGTH; ++i) {
+            char c = cardNumber.charAt(i);
+            if (i == 4 || i == 9 || i == 14) {
+                if (c != '-') return -1;
+            } else {
+                if (c < '0' || c > '9') return -1;
+                result = result * 10 + (c - '0');
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Computes the Luhn check digit for the given digits (which do not yet include a check digit)
+     */
+    public static int luhnCheckDigit(long payload){
+        int sum = 0;
+        boolean doubleIt = true;     // the rightmost payload digit is doubled
+        for (long n = payload; n > 0; n /= 10) {
+            int d = (int) (n % 10);
+            if (doubleIt) {
+                d *= 2;
+                if (d > 9) d -= 9;
+            }
+            sum += d;
+            doubleIt = !doubleIt;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    public static boolean isValid(long number){
+        return luhnCheckDigit(number / 10) == number % 10;
+    }
+}
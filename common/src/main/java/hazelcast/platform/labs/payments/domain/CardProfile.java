@@ -0,0 +1,147 @@
+package hazelcast.platform.labs.payments.domain;
+
+import java.util.Arrays;
+
+/*
+ * A card's long-term spending behaviour: the number of transactions, the running mean and variance of
+ * their amounts, the merchants it uses most and when it was last used.
+ *
+ * The size is fixed, whatever the card's history. The mean and variance are kept with Welford's
+ * algorithm (a count, a mean and a sum of squared differences from the mean), which can be updated
+ * one amount at a time without losing precision.  The typical merchants are the TOP_MERCHANTS
+ * heaviest hitters by the space-saving algorithm: a merchant that is not tracked takes over the slot
+ * with the lowest count, and inherits that count, so a merchant that is used a lot always ends up in
+ * a slot. Merchants are tracked by Merchant.numericId.  The pipeline's check only uses the amounts;
+ * the merchants are there for readers of the map.
+ *
+ * The fraud pipeline keeps one per active card in a keyed stage and writes copies to the
+ * "card_profiles" map, see FraudPipeline.PROFILE_CHECK_OPTION.  CardProfileSerializer is its Compact
+ * serializer.
+ */
+public class CardProfile {
+    public static final int TOP_MERCHANTS = 4;
+
+    private long count;
+    private double mean;
+    private double m2;
+    private long lastSeen;
+    private final int[] merchants;
+    private final int[] merchantCounts;
+
+    public CardProfile() {
+        this.merchants = new int[TOP_MERCHANTS];
+        this.merchantCounts = new int[TOP_MERCHANTS];
+    }
+
+    CardProfile(long count, double mean, double m2, long lastSeen, int[] merchants, int[] merchantCounts) {
+        this.count = count;
+        this.mean = mean;
+        this.m2 = m2;
+        this.lastSeen = lastSeen;
+        this.merchants = merchants;
+        this.merchantCounts = merchantCounts;
+    }
+
+    public void add(int amount, String merchantId, long timestamp) {
+        ++count;
+        double delta = amount - mean;
+        mean += delta / count;
+        m2 += delta * (amount - mean);
+        lastSeen = Math.max(lastSeen, timestamp);
+
+        int merchant = Merchant.numericId(merchantId);
+        if (merchant >= 0) addMerchant(merchant, 1);
+    }
+
+    private void addMerchant(int merchant, int times) {
+        int lowest = 0;
+        for (int i = 0; i < merchants.length; ++i) {
+            if (merchantCounts[i] > 0 && merchants[i] == merchant) {
+                merchantCounts[i] += times;
+                return;
+            }
+            if (merchantCounts[i] < merchantCounts[lowest]) lowest = i;
+        }
+        merchants[lowest] = merchant;
+        merchantCounts[lowest] += times;
+    }
+
+    /*
+     * Whether amount is more than maxZScore standard deviations above the mean.  Until there are
+     * warmCount transactions the sample is too small for its standard deviation to mean much, so it is
+     * taken to be at least the mean itself: amounts more than maxZScore + 1 times the mean are outliers
+     * from the second transaction on.  Never true for a card with no transactions.
+     */
+    public boolean isOutlier(int amount, double maxZScore, long warmCount) {
+        if (count == 0) return false;
+
+        double sd = Math.max(1, standardDeviation());
+        if (count < warmCount) sd = Math.max(sd, Math.abs(mean));
+        return (amount - mean) / sd > maxZScore;
+    }
+
+    /*
+     * Adds another profile of the same card, as if its transactions had been added to this one, using
+     * the parallel form of Welford's algorithm.  The other profile's merchants are added with their
+     * counts, in the same space-saving way as single transactions.
+     */
+    public void merge(CardProfile other) {
+        if (other.count == 0) return;
+
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        m2 += other.m2 + delta * delta * count * other.count / total;
+        mean += delta * other.count / total;
+        count = total;
+        lastSeen = Math.max(lastSeen, other.lastSeen);
+
+        for (int i = 0; i < other.merchants.length; ++i)
+            if (other.merchantCounts[i] > 0) addMerchant(other.merchants[i], other.merchantCounts[i]);
+    }
+
+    public double standardDeviation() {
+        return count < 2 ? 0 : Math.sqrt(m2 / (count - 1));
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    // the sum of squared differences from the mean, see Welford's algorithm
+    public double getM2() {
+        return m2;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    // unused slots have a count of 0
+    public int[] getMerchants() {
+        return merchants.clone();
+    }
+
+    public int[] getMerchantCounts() {
+        return merchantCounts.clone();
+    }
+
+    public CardProfile copy() {
+        return new CardProfile(count, mean, m2, lastSeen, merchants.clone(), merchantCounts.clone());
+    }
+
+    @Override
+    public String toString() {
+        return "CardProfile{" +
+                "count=" + count +
+                ", mean=" + mean +
+                ", standardDeviation=" + standardDeviation() +
+                ", lastSeen=" + lastSeen +
+                ", merchants=" + Arrays.toString(merchants) +
+                ", merchantCounts=" + Arrays.toString(merchantCounts) +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+package hazelcast.platform.labs.payments.domain;
+
+import com.hazelcast.nio.serialization.compact.CompactReader;
+import com.hazelcast.nio.serialization.compact.CompactSerializer;
+import com.hazelcast.nio.serialization.compact.CompactWriter;
+
+/*
+ * Compact serialization of CardProfile, for the "card_profiles" map and the pipeline's snapshots
+ */
+public class CardProfileSerializer implements CompactSerializer<CardProfile> {
+    static final String TYPE_NAME = "CardProfile";
+
+    @Override
+    public CardProfile read(CompactReader reader) {
+        return new CardProfile(
+                reader.readInt64("count"),
+                reader.readFloat64("mean"),
+                reader.readFloat64("m2"),
+                reader.readInt64("lastSeen"),
+                reader.readArrayOfInt32("merchants"),
+                reader.readArrayOfInt32("merchantCounts"));
+    }
+
+    @Override
+    public void write(CompactWriter writer, CardProfile profile) {
+        writer.writeInt64("count", profile.getCount());
+        writer.writeFloat64("mean", profile.getMean());
+        writer.writeFloat64("m2", profile.getM2());
+        writer.writeInt64("lastSeen", profile.getLastSeen());
+        writer.writeArrayOfInt32("merchants", profile.getMerchants());
+        writer.writeArrayOfInt32("merchantCounts", profile.getMerchantCounts());
+    }
+
+    @Override
+    public String getTypeName() {
+        return TYPE_NAME;
+    }
+
+    @Override
+    public Class<CardProfile> getCompactClass() {
+        return CardProfile.class;
+    }
+}
@@ -0,0 +1,14 @@
+package hazelcast.platform.labs.payments.domain;
+
+/*
+ * Why a transaction was not approved.  A Transaction with no decline reason is approved.
+ */
+public enum DeclineReason {
+    BLOCKED_CARD,
+    UNKNOWN_CARD,
+    VELOCITY_COUNT,
+    VELOCITY_AMOUNT,
+    MERCHANT_LIMIT,
+    AMOUNT_OUTLIER,
+    RULE
+}
@@ -0,0 +1,91 @@
+package hazelcast.platform.labs.payments.domain;
+
+import java.util.SplittableRandom;
+
+/*
+ * An entry in the "merchants" map, keyed by merchant id ("0000" to "9999", as in the transaction
+ * messages).  Transactions over the merchant's amount limit are declined.
+ */
+public class Merchant {
+    public static final String RISK_LOW = "LOW";
+    public static final String RISK_MEDIUM = "MEDIUM";
+    public static final String RISK_HIGH = "HIGH";
+
+    private static final long SEED = 0x3e7c_4a27L;
+
+    String merchantId;
+    String riskCategory;
+    int amountLimit;
+
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    public void setMerchantId(String merchantId) {
+        this.merchantId = merchantId;
+    }
+
+    public String getRiskCategory() {
+        return riskCategory;
+    }
+
+    public void setRiskCategory(String riskCategory) {
+        this.riskCategory = riskCategory;
+    }
+
+    public int getAmountLimit() {
+        return amountLimit;
+    }
+
+    public void setAmountLimit(int amountLimit) {
+        this.amountLimit = amountLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "Merchant{" +
+                "merchantId='" + merchantId + '\'' +
+                ", riskCategory='" + riskCategory + '\'' +
+                ", amountLimit=" + amountLimit +
+                '}';
+    }
+
+    /*
+     * Generates merchant number id. The same id always gives the same merchant: 80% are low risk
+     * with a limit of 1,000,000, 15% medium risk with a limit of 10,000 and 5% high risk with a limit
+     * of 1,000.
+     */
+    public static Merchant generate(int id){
+        int r = new SplittableRandom(SEED + id).nextInt(100);
+
+        Merchant result = new Merchant();
+        result.setMerchantId(String.format("%04d", id));
+        if (r < 5) {
+            result.setRiskCategory(RISK_HIGH);
+            result.setAmountLimit(1000);
+        } else if (r < 20) {
+            result.setRiskCategory(RISK_MEDIUM);
+            result.setAmountLimit(10000);
+        } else {
+            result.setRiskCategory(RISK_LOW);
+            result.setAmountLimit(1000000);
+        }
+        return result;
+    }
+
+    /*
+     * Parses a merchant id such as "0042" without allocating.  Returns -1 if it is not a non-negative
+     * decimal number below 2^31.
+     */
+    public static int numericId(String merchantId){
+        if (merchantId == null || merchantId.isEmpty() || merchantId.length() > 9) return -1;
+
+        int result = 0;
+        for (int i = 0; i < merchantId.length(); ++i) {
+            char c = merchantId.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+}
@@ -2,5 +2,10 @@ package hazelcast.platform.labs.payments.domain;
 
 public class Names {
     public static final String CARD_MAP_NAME = "cards";
+    public static final String BLOCKED_CARD_MAP_NAME = "blocked_cards";
+    public static final String MERCHANT_MAP_NAME = "merchants";
+    public static final String CARD_PROFILE_MAP_NAME = "card_profiles";
+    public static final String FRAUD_RULE_MAP_NAME = "fraud_rules";
+    public static final String SEEN_TRANSACTION_MAP_NAME = "seen_transactions";
     public static final String SYSTEM_ACTIVITIES_MAP_NAME = "system_activities";
 }
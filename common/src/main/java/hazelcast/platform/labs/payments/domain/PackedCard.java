@@ -0,0 +1,39 @@
+package hazelcast.platform.labs.payments.domain;
+
+/*
+ * An entry in the "cards" map when the map is keyed by the card number packed into a long (see
+ * CardNumbers.pack) instead of by the "NNNN-NNNN-NNNN-NNNN" String.  Both the key and the value are
+ * then a single long instead of a 19 character string each.  The String form is only produced, with
+ * getFormattedCardNumber, when it is needed for output.
+ *
+ * The refdata loader writes cards this way with CARD_KEY=long, and the fraud pipeline reads them
+ * with card.key=long.  A map holds one kind or the other, so clear it before changing.
+ */
+public class PackedCard {
+    long cardNumber;
+
+    public long getCardNumber() {
+        return cardNumber;
+    }
+
+    public void setCardNumber(long cardNumber) {
+        this.cardNumber = cardNumber;
+    }
+
+    public String getFormattedCardNumber() {
+        return CardNumbers.format(cardNumber);
+    }
+
+    @Override
+    public String toString() {
+        return "PackedCard{" +
+                "cardNumber=" + cardNumber +
+                '}';
+    }
+
+    public static PackedCard withNumber(long cardNumber){
+        PackedCard result = new PackedCard();
+        result.setCardNumber(cardNumber);
+        return result;
+    }
+}
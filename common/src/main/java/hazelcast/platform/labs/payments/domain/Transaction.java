@@ -1,13 +1,38 @@
 package hazelcast.platform.labs.payments.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonSetter;
 
+import java.util.random.RandomGenerator;
+
+// fields added by newer producers are skipped, as TransactionCodec does
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class Transaction {
     private String cardNumber;
     private String transactionId;
     private int amount;
     private String merchantId;
 
+    /*
+     * Event time in epoch milliseconds.  This is not part of the JSON message, the pipeline sets it
+     * from the Kafka record timestamp.
+     */
+    private long timestamp;
+
+    /*
+     * Set by the fraud checks as the transaction moves through the pipeline. Each stage owns the
+     * Transaction while it processes it, so checks record their verdict here rather than wrapping
+     * the Transaction in a new object. The first decline wins.
+     */
+    private DeclineReason declineReason;
+
+    /*
+     * Set when the pipeline was overloaded and the transaction took the fast path, which skips some
+     * of the checks (see FraudPipeline.SHED_LAG_MS_OPTION)
+     */
+    private boolean degraded;
+
     public String getCardNumber() {
         return cardNumber;
     }
@@ -44,6 +69,69 @@ public class Transaction {
         this.merchantId = merchantId;
     }
 
+    @JsonIgnore
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @JsonIgnore
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    @JsonIgnore
+    public DeclineReason getDeclineReason() {
+        return declineReason;
+    }
+
+    @JsonIgnore
+    public void setDeclineReason(DeclineReason declineReason) {
+        this.declineReason = declineReason;
+    }
+
+    @JsonIgnore
+    public boolean isApproved() {
+        return declineReason == null;
+    }
+
+    public void decline(DeclineReason reason) {
+        if (declineReason == null) declineReason = reason;
+    }
+
+    @JsonIgnore
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    @JsonIgnore
+    public void setDegraded(boolean degraded) {
+        this.degraded = degraded;
+    }
+
+    /*
+     * A transaction like the ones fake_txn in event-generator/event_generator.py makes: a random
+     * merchant from 0000 to 9998 and an amount from fakeAmount.
+     */
+    public static Transaction fake(String cardNumber, String transactionId, RandomGenerator random){
+        Transaction result = new Transaction();
+        result.setCardNumber(cardNumber);
+        result.setTransactionId(transactionId);
+        result.setAmount(fakeAmount(random));
+        result.setMerchantId(Integer.toString(10000 + random.nextInt(9999)).substring(1));   // "%04d"
+        return result;
+    }
+
+    /*
+     * The amount distribution of fake_txn: 10% are 1,000,000, then 10% of the rest are 1000 to 4999,
+     * 10% of what is left 100 to 999 and everything else (about 73%) 1 to 99.
+     */
+    public static int fakeAmount(RandomGenerator random){
+        if (random.nextDouble() < 0.1) return 1000000;
+        if (random.nextDouble() < 0.1) return 1000 + random.nextInt(4000);
+        if (random.nextDouble() < 0.1) return 100 + random.nextInt(900);
+        return 1 + random.nextInt(99);
+    }
+
     @Override
     public String toString() {
         return "Transaction{" +
@@ -51,6 +139,9 @@ public class Transaction {
                 ", transactionId='" + transactionId + '\'' +
                 ", amount=" + amount +
                 ", merchantId='" + merchantId + '\'' +
+                ", timestamp=" + timestamp +
+                ", declineReason=" + declineReason +
+                ", degraded=" + degraded +
                 '}';
     }
 }
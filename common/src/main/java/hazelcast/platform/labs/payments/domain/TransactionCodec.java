@@ -0,0 +1,320 @@
+package hazelcast.platform.labs.payments.domain;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Decodes the transaction JSON written by the event generator directly from the message bytes, e.g.
+ *
+ * {
+ *   "card_number": "6771-8952-0704-5425",
+ *   "transaction_id": "1710969754",
+ *   "amount": 42,
+ *   "merchant_id": "8222"
+ * }
+ *
+ * This is a narrow, hand-rolled scanner. It only knows the four fields above and skips anything else,
+ * so it avoids the reflection, token objects and intermediate buffers of Jackson databind. The only
+ * allocations per message are the Transaction and its three Strings.
+ *
+ * An instance keeps scanning state, so it is NOT thread safe. In a pipeline, use one instance
+ * per processor (ServiceFactories.nonSharedService).
+ *
+ * appendJson writes the same message, for generators.
+ */
+public class TransactionCodec {
+    private static final byte[] CARD_NUMBER = "card_number".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRANSACTION_ID = "transaction_id".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AMOUNT = "amount".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MERCHANT_ID = "merchant_id".getBytes(StandardCharsets.US_ASCII);
+
+    // scanning state for the message currently being decoded
+    private byte[] buf;
+    private int pos;
+    private int end;
+
+    // set by scanString to describe the string just scanned
+    private int strStart;
+    private int strEnd;
+    private boolean strEscaped;
+    private boolean strAscii;
+
+    // re-used when a string contains escape sequences, which the generator never produces
+    private final StringBuilder scratch = new StringBuilder(32);
+
+    public Transaction decode(byte[] json) {
+        return decode(json, 0, json.length);
+    }
+
+    public Transaction decode(byte[] json, int offset, int length) {
+        buf = json;
+        pos = offset;
+        end = offset + length;
+        try {
+            return decodeObject();
+        } finally {
+            buf = null;     // don't hold on to the last message
+        }
+    }
+
+    /*
+     * Convenience for callers that only have a String. This allocates a byte[] per call, so prefer
+     * the byte[] variants on hot paths.
+     */
+    public Transaction decode(String json) {
+        return decode(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /*
+     * Appends txn as JSON in the layout above (python's json.dumps, on one line). The strings are
+     * not escaped, which is fine for generated card numbers, transaction ids and merchant ids.
+     */
+    public static StringBuilder appendJson(StringBuilder out, Transaction txn) {
+        return out.append("{\"card_number\": \"").append(txn.getCardNumber())
+                .append("\", \"transaction_id\": \"").append(txn.getTransactionId())
+                .append("\", \"amount\": ").append(txn.getAmount())
+                .append(", \"merchant_id\": \"").append(txn.getMerchantId())
+                .append("\"}");
+    }
+
+    private Transaction decodeObject() {
+        Transaction result = new Transaction();
+        expect('{');
+        if (peek() == '}') {
+            pos++;
+            return result;
+        }
+
+        while (true) {
+            expect('"');
+            scanString();
+            int nameStart = strStart;
+            int nameEnd = strEnd;
+            expect(':');
+
+            if (nameIs(nameStart, nameEnd, CARD_NUMBER)) {
+                result.setCardNumber(readStringValue());
+            } else if (nameIs(nameStart, nameEnd, TRANSACTION_ID)) {
+                result.setTransactionId(readStringValue());
+            } else if (nameIs(nameStart, nameEnd, MERCHANT_ID)) {
+                result.setMerchantId(readStringValue());
+            } else if (nameIs(nameStart, nameEnd, AMOUNT)) {
+                result.setAmount(readIntValue());
+            } else {
+                skipValue();
+            }
+
+            byte b = next();
+            if (b == '}') return result;
+            if (b != ',') throw malformed("expected ',' or '}'");
+        }
+    }
+
+    private boolean nameIs(int start, int stop, byte[] name) {
+        if (stop - start != name.length) return false;
+        for (int i = 0; i < name.length; ++i)
+            if (buf[start + i] != name[i]) return false;
+
+        return true;
+    }
+
+    /*
+     * Reads a JSON string or null. Numbers are accepted too (as their literal text), matching
+     * Jackson's default coercion into String properties.
+     */
+    private String readStringValue() {
+        byte b = peek();
+        if (b == '"') {
+            pos++;
+            scanString();
+            return stringValue();
+        } else if (b == 'n') {
+            expectLiteral("null");
+            return null;
+        } else if (b == '-' || (b >= '0' && b <= '9')) {
+            int start = pos;
+            skipNumber();
+            return new String(buf, start, pos - start, StandardCharsets.US_ASCII);
+        }
+        throw malformed("expected a string");
+    }
+
+    /*
+     * Reads an int the way Jackson databind does by default: a JSON integer, a quoted integer or a
+     * floating point number which is truncated.
+     */
+    private int readIntValue() {
+        byte b = peek();
+        if (b == '"') {
+            pos++;
+            scanString();
+            return Integer.parseInt(stringValue().trim());
+        } else if (b == 'n') {
+            expectLiteral("null");
+            return 0;
+        }
+
+        int start = pos;
+        boolean negative = false;
+        if (b == '-') {
+            negative = true;
+            pos++;
+        }
+
+        long value = 0;
+        int digits = 0;
+        while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+            value = value * 10 + (buf[pos++] - '0');
+            if (++digits > 10) throw malformed("amount out of range");
+        }
+        if (digits == 0) throw malformed("expected a number");
+
+        if (pos < end && (buf[pos] == '.' || buf[pos] == 'e' || buf[pos] == 'E')) {
+            // rare: fall back to the JDK for fractions and exponents
+            pos = start;
+            skipNumber();
+            return (int) Double.parseDouble(new String(buf, start, pos - start, StandardCharsets.US_ASCII));
+        }
+
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) throw malformed("amount out of range");
+        return (int) value;
+    }
+
+    /*
+     * Called after the opening quote has been consumed. Leaves pos after the closing quote and
+     * records the raw extent of the string.
+     */
+    private void scanString() {
+        strStart = pos;
+        strEscaped = false;
+        strAscii = true;
+        while (pos < end) {
+            byte b = buf[pos];
+            if (b == '"') {
+                strEnd = pos++;
+                return;
+            } else if (b == '\\') {
+                strEscaped = true;
+                pos += 2;
+            } else {
+                if (b < 0) strAscii = false;
+                pos++;
+            }
+        }
+        throw malformed("unterminated string");
+    }
+
+    private String stringValue() {
+        if (!strEscaped)
+            return new String(buf, strStart, strEnd - strStart,
+                    strAscii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+
+        return unescape(strStart, strEnd);
+    }
+
+    private String unescape(int start, int stop) {
+        scratch.setLength(0);
+        int i = start;
+        while (i < stop) {
+            byte b = buf[i];
+            if (b != '\\') {
+                // copy a run of unescaped bytes, which may be multi-byte UTF-8
+                int runStart = i;
+                while (i < stop && buf[i] != '\\') i++;
+                scratch.append(new String(buf, runStart, i - runStart, StandardCharsets.UTF_8));
+                continue;
+            }
+
+            byte esc = buf[i + 1];
+            i += 2;
+            switch (esc) {
+                case '"' -> scratch.append('"');
+                case '\\' -> scratch.append('\\');
+                case '/' -> scratch.append('/');
+                case 'b' -> scratch.append('\b');
+                case 'f' -> scratch.append('\f');
+                case 'n' -> scratch.append('\n');
+                case 'r' -> scratch.append('\r');
+                case 't' -> scratch.append('\t');
+                case 'u' -> {
+                    if (i + 4 > stop) throw malformed("bad unicode escape");
+                    scratch.append((char) Integer.parseInt(
+                            new String(buf, i, 4, StandardCharsets.US_ASCII), 16));
+                    i += 4;
+                }
+                default -> throw malformed("bad escape sequence");
+            }
+        }
+        return scratch.toString();
+    }
+
+    private void skipValue() {
+        byte b = peek();
+        switch (b) {
+            case '"' -> {
+                pos++;
+                scanString();
+            }
+            case '{', '[' -> skipNested();
+            case 't' -> expectLiteral("true");
+            case 'f' -> expectLiteral("false");
+            case 'n' -> expectLiteral("null");
+            default -> skipNumber();
+        }
+    }
+
+    private void skipNested() {
+        int depth = 0;
+        while (pos < end) {
+            byte b = buf[pos++];
+            if (b == '"') {
+                scanString();
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) return;
+            }
+        }
+        throw malformed("unterminated object or array");
+    }
+
+    private void skipNumber() {
+        int start = pos;
+        while (pos < end) {
+            byte b = buf[pos];
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') pos++;
+            else break;
+        }
+        if (pos == start) throw malformed("unexpected character");
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); ++i)
+            if (pos >= end || buf[pos++] != literal.charAt(i)) throw malformed("expected " + literal);
+    }
+
+    private void expect(char c) {
+        if (next() != c) throw malformed("expected '" + c + "'");
+    }
+
+    // returns the next non-whitespace byte and consumes it
+    private byte next() {
+        byte b = peek();
+        pos++;
+        return b;
+    }
+
+    // returns the next non-whitespace byte without consuming it
+    private byte peek() {
+        while (pos < end) {
+            byte b = buf[pos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') return b;
+            pos++;
+        }
+        throw malformed("unexpected end of input");
+    }
+
+    private IllegalArgumentException malformed(String problem) {
+        return new IllegalArgumentException("Malformed transaction JSON at offset " + pos + ": " + problem);
+    }
+}
@@ -0,0 +1,81 @@
+package hazelcast.platform.labs.payments.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CardNumberGeneratorTest {
+    private static final int CARDS = 200_000;
+
+    @Test
+    public void cardNumbersAreUnique() {
+        CardNumberGenerator generator = new CardNumberGenerator(CardNumberGenerator.DEFAULT_SEED);
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < CARDS; ++i)
+            assertTrue(seen.add(generator.cardNumberAt(i)), "duplicate at index " + i);
+    }
+
+    @Test
+    public void cardNumbersAreUniqueAcrossThreads() throws InterruptedException {
+        CardNumberGenerator generator = new CardNumberGenerator(42);
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; ++t)
+            threads.execute(() -> {
+                for (int i = 0; i < CARDS / 4; ++i) seen.add(generator.next());
+            });
+        threads.shutdown();
+        assertTrue(threads.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(CARDS, seen.size());
+    }
+
+    @Test
+    public void cardNumbersPassTheLuhnCheck() {
+        CardNumberGenerator generator = new CardNumberGenerator(CardNumberGenerator.DEFAULT_SEED);
+        for (int i = 0; i < CARDS; ++i) {
+            String cardNumber = generator.cardNumberAt(i);
+            assertTrue(cardNumber.matches("4\\d{3}-\\d{4}-\\d{4}-\\d{4}"), cardNumber);
+            assertTrue(luhnValid(cardNumber), cardNumber);
+            assertTrue(CardNumbers.isValid(generator.numberAt(i)), cardNumber);
+        }
+    }
+
+    @Test
+    public void cardNumbersDependOnlyOnSeedAndIndex() {
+        CardNumberGenerator a = new CardNumberGenerator(7);
+        CardNumberGenerator b = new CardNumberGenerator(7);
+        CardNumberGenerator other = new CardNumberGenerator(8);
+
+        for (long i : new long[]{0, 1, 999_999, 99_999_999_999_999L}) {
+            assertEquals(a.cardNumberAt(i), b.cardNumberAt(i));
+            assertNotEquals(a.cardNumberAt(i), other.cardNumberAt(i));
+        }
+        assertEquals(a.cardNumberAt(0), a.next());
+        assertEquals(a.cardNumberAt(1), a.next());
+    }
+
+    // the Luhn check written out from the digits, independently of CardNumbers
+    private static boolean luhnValid(String cardNumber) {
+        String digits = cardNumber.replace("-", "");
+        int sum = 0;
+        for (int i = 0; i < digits.length(); ++i) {
+            int d = digits.charAt(digits.length() - 1 - i) - '0';
+            if (i % 2 == 1) {
+                d *= 2;
+                if (d > 9) d -= 9;
+            }
+            sum += d;
+        }
+        return sum % 10 == 0;
+    }
+}
@@ -0,0 +1,96 @@
+package hazelcast.platform.labs.payments.domain;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*
+ * TransactionCodec must read every message the way ObjectMapper.readValue(json, Transaction.class)
+ * does, since FraudPipeline.PARSER_OPTION switches between them.
+ */
+public class TransactionCodecTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            // as written by the event generator
+            "{\"card_number\": \"6771-8952-0704-5425\", \"transaction_id\": \"1710969754\", \"amount\": 42, \"merchant_id\": \"8222\"}",
+            // field order
+            "{\"merchant_id\":\"8222\",\"amount\":42,\"transaction_id\":\"1710969754\",\"card_number\":\"6771-8952-0704-5425\"}",
+            "{\"amount\":42,\"card_number\":\"6771-8952-0704-5425\",\"merchant_id\":\"8222\",\"transaction_id\":\"1\"}",
+            // whitespace
+            "\n{ \"card_number\" :\t\"c\" ,\r\n \"transaction_id\": \"t\",\"amount\":\n-7 ,\"merchant_id\":\"m\" }\n",
+            // escapes
+            "{\"card_number\":\"a\\\"b\",\"transaction_id\":\"back\\\\slash\",\"amount\":1,\"merchant_id\":\"x\\/y\"}",
+            "{\"card_number\":\"\\u00e9\\u20ac\",\"transaction_id\":\"tab\\tnew\\nline\\r\",\"amount\":1,\"merchant_id\":\"\\b\\f\"}",
+            "{\"card_number\":\"caf\u00e9 \u20ac\",\"transaction_id\":\"mixed \u00e9\\n\",\"amount\":1,\"merchant_id\":\"m\"}",
+            // extra fields of every kind, before, between and after the known ones
+            "{\"version\":2,\"card_number\":\"c\",\"note\":\"has \\\"quotes\\\" and } and ]\",\"transaction_id\":\"t\","
+                    + "\"amount\":5,\"tags\":[1,\"two\",{\"three\":[3]}],\"merchant_id\":\"m\",\"flags\":{\"a\":true,\"b\":false,\"c\":null},"
+                    + "\"rate\":-1.5e3}",
+            // missing fields
+            "{\"card_number\":\"c\",\"transaction_id\":\"t\"}",
+            "{\"amount\":5}",
+            "{}",
+            // nulls
+            "{\"card_number\":null,\"transaction_id\":null,\"amount\":null,\"merchant_id\":null}",
+            // numbers where strings are expected and the other way round
+            "{\"card_number\":\"c\",\"transaction_id\":1710969754,\"amount\":\"42\",\"merchant_id\":8222}",
+            "{\"card_number\":\"c\",\"transaction_id\":\"t\",\"amount\":42.9,\"merchant_id\":\"m\"}",
+            "{\"card_number\":\"c\",\"transaction_id\":\"t\",\"amount\":-2147483648,\"merchant_id\":\"m\"}",
+            // a field given twice: the last one wins
+            "{\"card_number\":\"first\",\"card_number\":\"second\",\"transaction_id\":\"t\",\"amount\":1,\"amount\":2}"
+    })
+    public void decodesLikeJackson(String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        Transaction expected = MAPPER.readValue(bytes, Transaction.class);
+        Transaction actual = new TransactionCodec().decode(bytes);
+
+        assertEquals(expected.getCardNumber(), actual.getCardNumber(), "card_number");
+        assertEquals(expected.getTransactionId(), actual.getTransactionId(), "transaction_id");
+        assertEquals(expected.getAmount(), actual.getAmount(), "amount");
+        assertEquals(expected.getMerchantId(), actual.getMerchantId(), "merchant_id");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "[]",
+            "{\"card_number\":\"c\"",
+            "{\"card_number\":\"unterminated}",
+            "{\"card_number\" \"c\"}",
+            "{\"card_number\":\"c\",}",
+            "{\"amount\":}",
+            "{\"amount\":12345678901}",
+            "{\"card_number\":nul}"
+    })
+    public void rejectsWhatJacksonRejects(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> MAPPER.readValue(bytes, Transaction.class));
+        assertThrows(IllegalArgumentException.class, () -> new TransactionCodec().decode(bytes));
+    }
+
+    @Test
+    public void readsWhatAppendJsonWrites() {
+        Transaction txn = new Transaction();
+        txn.setCardNumber("6771-8952-0704-5425");
+        txn.setTransactionId("1710969754");
+        txn.setAmount(42);
+        txn.setMerchantId("8222");
+
+        String json = TransactionCodec.appendJson(new StringBuilder(), txn).toString();
+        Transaction decoded = new TransactionCodec().decode(json);
+
+        assertEquals(txn.getCardNumber(), decoded.getCardNumber());
+        assertEquals(txn.getTransactionId(), decoded.getTransactionId());
+        assertEquals(txn.getAmount(), decoded.getAmount());
+        assertEquals(txn.getMerchantId(), decoded.getMerchantId());
+    }
+}
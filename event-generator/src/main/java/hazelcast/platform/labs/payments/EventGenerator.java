@@ -0,0 +1,276 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.client.HazelcastClient;
+import com.hazelcast.client.config.ClientConfig;
+import com.hazelcast.client.config.ClientConnectionStrategyConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import hazelcast.platform.labs.MapWaiter;
+import hazelcast.platform.labs.payments.domain.CardNumberGenerator;
+import hazelcast.platform.labs.payments.domain.Names;
+import hazelcast.platform.labs.payments.domain.Transaction;
+import hazelcast.platform.labs.payments.domain.TransactionCodec;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends transactions for the cards loaded by the refdata loader to a Kafka topic at a fixed rate,
+ * in the same JSON format as event_generator.py.
+ * <p>
+ * The rate is open loop: transaction n is scheduled for start + n / TARGET_RATE regardless of how long
+ * earlier sends took.  If the producer blocks (e.g. its buffer is full) the generator catches up
+ * afterwards rather than quietly sending fewer transactions, and each record's timestamp, which the
+ * fraud pipeline uses as event time, is the time it was scheduled, not the time it was sent.  So
+ * any delay in the generator or Kafka shows up in the pipeline's event age metrics (sinkAge etc.)
+ * instead of being hidden (coordinated omission).
+ * <p>
+ * Card numbers are derived with CardNumberGenerator from CARD_SEED and the number of cards, as the
+ * loader does, so they are not read from the cluster.  Cards are picked with a Zipfian distribution
+ * (see ZipfianSampler) to emulate hot cards.  Amounts and merchants are as in event_generator.py, see
+ * Transaction.fake.  Transaction ids are unique within a run.
+ * <p>
+ * Stopping the generator (Ctrl-C, docker stop) still flushes the producer and prints the final counts.
+ * <p>
+ * Expects the following environment variables
+ * <p>
+ * HZ_SERVERS  A comma-separated list of Hazelcast servers in host:port format.  Required.
+ * <p>
+ * HZ_CLUSTER_NAME  The name of the Hazelcast cluster to connect.  Required.
+ * <p>
+ * KAFKA_BOOTSTRAP_SERVERS, KAFKA_TRANSACTION_TOPIC  Where to send the transactions.  Required.
+ * <p>
+ * TARGET_RATE  Transactions per second.  Optional, defaults to 1000.
+ * <p>
+ * DURATION_SECONDS  How long to run.  Optional, the default is to run until stopped.
+ * <p>
+ * CARD_COUNT, CARD_SEED  The cards to use, as given to the refdata loader.  Optional, by default all
+ *                        the cards in the cards map and CardNumberGenerator.DEFAULT_SEED.
+ * <p>
+ * ZIPF_EXPONENT  The skew of the card distribution, 0 for uniform.  Optional, defaults to 1.
+ * <p>
+ * RANDOM_SEED  Seeds the choice of cards, amounts and merchants, so that runs with the same seed and
+ *              rate send the same transactions (with different ids).  Optional, unseeded by default.
+ * <p>
+ * KAFKA_LINGER_MS, KAFKA_BATCH_SIZE, KAFKA_COMPRESSION  The producer's linger.ms, batch.size and
+ *                        compression.type.  Optional, default to 5, 65536 and none.
+ * <p>
+ * REPORT_SECONDS  How often to print the achieved rate.  Optional, defaults to 10.
+ */
+public class EventGenerator {
+    private static final String HZ_SERVERS_PROP = "HZ_SERVERS";
+    private static final String HZ_CLUSTER_NAME_PROP = "HZ_CLUSTER_NAME";
+    private static final String KAFKA_BOOTSTRAP_SERVERS_PROP = "KAFKA_BOOTSTRAP_SERVERS";
+    private static final String KAFKA_TRANSACTION_TOPIC_PROP = "KAFKA_TRANSACTION_TOPIC";
+    private static final String TARGET_RATE_PROP = "TARGET_RATE";
+    private static final String DURATION_SECONDS_PROP = "DURATION_SECONDS";
+    private static final String CARD_COUNT_PROP = "CARD_COUNT";
+    private static final String CARD_SEED_PROP = "CARD_SEED";
+    private static final String ZIPF_EXPONENT_PROP = "ZIPF_EXPONENT";
+    private static final String RANDOM_SEED_PROP = "RANDOM_SEED";
+    private static final String KAFKA_LINGER_MS_PROP = "KAFKA_LINGER_MS";
+    private static final String KAFKA_BATCH_SIZE_PROP = "KAFKA_BATCH_SIZE";
+    private static final String KAFKA_COMPRESSION_PROP = "KAFKA_COMPRESSION";
+    private static final String REPORT_SECONDS_PROP = "REPORT_SECONDS";
+
+    private static String []hzServers;
+    private static String hzClusterName;
+    private static String kafkaBootstrapServers;
+    private static String topic;
+
+    private static long targetRate;
+    private static long durationSeconds;
+    private static long cardCount;
+    private static long cardSeed;
+    private static double zipfExponent;
+    private static boolean seeded;
+    private static long randomSeed;
+    private static long lingerMs;
+    private static long kafkaBatchSize;
+    private static String compression;
+    private static long reportSeconds;
+
+    private static final AtomicLong acked = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+
+    // set by the shutdown hook, which then waits for the producer to be flushed and closed
+    private static volatile boolean stopping;
+    private static final CountDownLatch stopped = new CountDownLatch(1);
+
+    private static String getRequiredProp(String propName){
+        String prop = System.getenv(propName);
+        if (prop == null){
+            System.err.println("The " + propName + " property must be set");
+            System.exit(1);
+        }
+        return prop;
+    }
+
+    private static long getOptionalLongProp(String propName, long defaultValue, long minimum){
+        String prop = System.getenv(propName);
+        if (prop == null) return defaultValue;
+
+        long result = 0;
+        try {
+            result = Long.parseLong(prop);
+        } catch(NumberFormatException nfx){
+            System.err.println("Could not parse " + propName + "=" + prop + " as an integer");
+            System.exit(1);
+        }
+
+        if (result < minimum){
+            System.err.println(propName + " must be at least " + minimum);
+            System.exit(1);
+        }
+        return result;
+    }
+
+    private static void configure(){
+        hzServers = getRequiredProp(HZ_SERVERS_PROP).split(",");
+        for (int i = 0; i < hzServers.length; ++i) hzServers[i] = hzServers[i].trim();
+
+        hzClusterName = getRequiredProp(HZ_CLUSTER_NAME_PROP);
+        kafkaBootstrapServers = getRequiredProp(KAFKA_BOOTSTRAP_SERVERS_PROP);
+        topic = getRequiredProp(KAFKA_TRANSACTION_TOPIC_PROP);
+
+        targetRate = getOptionalLongProp(TARGET_RATE_PROP, 1000, 1);
+        durationSeconds = getOptionalLongProp(DURATION_SECONDS_PROP, 0, 0);
+        cardCount = getOptionalLongProp(CARD_COUNT_PROP, 0, 1);
+        cardSeed = getOptionalLongProp(CARD_SEED_PROP, CardNumberGenerator.DEFAULT_SEED, Long.MIN_VALUE);
+        lingerMs = getOptionalLongProp(KAFKA_LINGER_MS_PROP, 5, 0);
+        kafkaBatchSize = getOptionalLongProp(KAFKA_BATCH_SIZE_PROP, 65536, 0);
+        reportSeconds = getOptionalLongProp(REPORT_SECONDS_PROP, 10, 1);
+        seeded = System.getenv(RANDOM_SEED_PROP) != null;
+        randomSeed = getOptionalLongProp(RANDOM_SEED_PROP, 0, Long.MIN_VALUE);
+
+        String zipf = System.getenv(ZIPF_EXPONENT_PROP);
+        zipfExponent = 1;
+        if (zipf != null) {
+            try {
+                zipfExponent = Double.parseDouble(zipf);
+            } catch (NumberFormatException nfx) {
+                zipfExponent = -1;
+            }
+            if (zipfExponent < 0) {
+                System.err.println(ZIPF_EXPONENT_PROP + " must be a number, at least 0");
+                System.exit(1);
+            }
+        }
+
+        compression = System.getenv(KAFKA_COMPRESSION_PROP);
+        if (compression == null) compression = "none";
+    }
+
+    private static Producer<String, byte[]> createProducer(){
+        Properties props = new Properties();
+        props.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaBootstrapServers);
+        props.setProperty(ProducerConfig.LINGER_MS_CONFIG, Long.toString(lingerMs));
+        props.setProperty(ProducerConfig.BATCH_SIZE_CONFIG, Long.toString(kafkaBatchSize));
+        props.setProperty(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+        return new KafkaProducer<>(props, new StringSerializer(), new ByteArraySerializer());
+    }
+
+    public static void main(String []args) {
+        configure();
+
+        ClientConfig clientConfig = new ClientConfig();
+        clientConfig.setClusterName(hzClusterName);
+        clientConfig.getNetworkConfig().addAddress(hzServers);
+        clientConfig.getConnectionStrategyConfig().setAsyncStart(false);
+        clientConfig.getConnectionStrategyConfig().setReconnectMode(ClientConnectionStrategyConfig.ReconnectMode.ON);
+
+        HazelcastInstance hzClient = HazelcastClient.newHazelcastClient(clientConfig);
+
+        IMap<String, String> systemActivitiesMap = hzClient.getMap(Names.SYSTEM_ACTIVITIES_MAP_NAME);
+        System.out.println("Waiting for reference data to be loaded");
+        new MapWaiter<>(systemActivitiesMap, "LOADER_STATUS", "FINISHED").await().join();
+        System.out.println("Reference data loaded.  Continuing");
+
+        if (cardCount == 0) cardCount = hzClient.getMap(Names.CARD_MAP_NAME).size();
+        hzClient.shutdown();
+        if (cardCount == 0 || cardCount > Integer.MAX_VALUE){
+            System.err.println("There are " + cardCount + " cards, there must be at least 1");
+            System.exit(1);
+        }
+
+        System.out.printf("Sending %d transactions/s for %d cards (Zipf exponent %.2f) to %s%n",
+                targetRate, cardCount, zipfExponent, topic);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopping = true;
+            try {
+                stopped.await();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+        }, "event-generator-shutdown"));
+
+        try (Producer<String, byte[]> producer = createProducer()) {
+            send(producer);
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private static void send(Producer<String, byte[]> producer){
+        CardNumberGenerator cardNumbers = new CardNumberGenerator(cardSeed);
+        ZipfianSampler cards = new ZipfianSampler((int) cardCount, zipfExponent);
+        SplittableRandom random = seeded ? new SplittableRandom(randomSeed) : new SplittableRandom();
+        StringBuilder json = new StringBuilder(128);
+
+        double nanosPerEvent = 1e9 / targetRate;
+        long startNanos = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        long idBase = startMillis * 1000;
+        long endNanos = durationSeconds == 0 ? Long.MAX_VALUE : startNanos + durationSeconds * 1_000_000_000L;
+
+        long reportNanos = reportSeconds * 1_000_000_000L;
+        long lastReport = startNanos;
+        long sentAtLastReport = 0;
+        long maxBehindNanos = 0;
+
+        for (long n = 0; ; ++n) {
+            long scheduled = startNanos + (long) (n * nanosPerEvent);
+            if (scheduled >= endNanos || stopping) break;
+
+            long now = System.nanoTime();
+            while (now < scheduled) {
+                LockSupport.parkNanos(scheduled - now);
+                now = System.nanoTime();
+            }
+            maxBehindNanos = Math.max(maxBehindNanos, now - scheduled);
+
+            if (now - lastReport >= reportNanos) {
+                System.out.printf("sent %d (%.0f/s), acked %d, failed %d, at most %.1fms behind schedule%n",
+                        n, (n - sentAtLastReport) * 1e9 / (now - lastReport),
+                        acked.get(), failed.get(), maxBehindNanos / 1e6);
+                sentAtLastReport = n;
+                maxBehindNanos = 0;
+                lastReport = now;
+            }
+
+            String cardNumber = cardNumbers.cardNumberAt(cards.sample(random) - 1);
+            Transaction txn = Transaction.fake(cardNumber, Long.toString(idBase + n), random);
+            json.setLength(0);
+            TransactionCodec.appendJson(json, txn);
+
+            long timestamp = startMillis + (scheduled - startNanos) / 1_000_000;
+            producer.send(new ProducerRecord<>(topic, null, timestamp, cardNumber,
+                    json.toString().getBytes(StandardCharsets.UTF_8)), (metadata, x) -> {
+                if (x == null) acked.incrementAndGet();
+                else failed.incrementAndGet();
+            });
+        }
+        producer.flush();
+        System.out.printf("Finished: acked %d, failed %d%n", acked.get(), failed.get());
+    }
+}
@@ -0,0 +1,81 @@
+package hazelcast.platform.labs.payments;
+
+import java.util.random.RandomGenerator;
+
+/*
+ * Samples ranks 1 to n with probability proportional to 1 / rank^exponent, so a few low ranks come up
+ * far more often than the rest.  With exponent 1 and 100,000 cards the hottest card gets about 8% of
+ * the transactions and the hottest 100 about 43%.
+ *
+ * This uses rejection-inversion (W. Hormann and G. Derflinger, "Rejection-inversion to generate
+ * variates from monotone discrete distributions", 1996), the method used by Apache Commons RNG.  It
+ * needs no table, so it works for millions of ranks, and takes a little more than one uniform random
+ * number per sample on average.  An exponent of 0 gives the uniform distribution.
+ *
+ * Instances hold no mutable state. The RandomGenerator passed to sample usually does.
+ */
+public class ZipfianSampler {
+    private final int n;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double s;
+
+    public ZipfianSampler(int n, double exponent) {
+        if (n < 1) throw new IllegalArgumentException("n must be at least 1");
+        if (exponent < 0) throw new IllegalArgumentException("exponent must not be negative");
+
+        this.n = n;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1;
+        this.hIntegralN = hIntegral(n + 0.5);
+        this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /*
+     * Returns a rank from 1 (the most likely) to n
+     */
+    public int sample(RandomGenerator random){
+        if (exponent == 0) return 1 + random.nextInt(n);
+
+        while (true) {
+            // u is uniform over (hIntegralX1, hIntegralN]
+            double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) k = 1;
+            else if (k > n) k = n;
+
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) return k;
+        }
+    }
+
+    // h(x) = 1 / x^exponent
+    private double h(double x){
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    // the integral of h, up to a constant, that is (x^(1 - exponent) - 1) / (1 - exponent) or log(x)
+    private double hIntegral(double x){
+        double logX = Math.log(x);
+        return expm1OverX((1 - exponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x){
+        // t can be slightly below -1 through rounding
+        double t = Math.max(-1, x * (1 - exponent));
+        return Math.exp(log1pOverX(t) * x);
+    }
+
+    // log(1 + x) / x, and its limit of 1 at 0
+    private static double log1pOverX(double x){
+        if (Math.abs(x) > 1e-8) return Math.log1p(x) / x;
+        return 1 - x * (0.5 - x * (1.0 / 3 - x * 0.25));
+    }
+
+    // (e^x - 1) / x, and its limit of 1 at 0
+    private static double expm1OverX(double x){
+        if (Math.abs(x) > 1e-8) return Math.expm1(x) / x;
+        return 1 + x * 0.5 * (1 + x / 3 * (1 + x * 0.25));
+    }
+}
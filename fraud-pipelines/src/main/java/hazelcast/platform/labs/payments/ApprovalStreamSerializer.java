@@ -0,0 +1,30 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import hazelcast.platform.labs.payments.domain.Approval;
+
+import java.io.IOException;
+
+/*
+ * Serializes Approval for the job, with the card number packed as in TransactionStreamSerializer
+ */
+public class ApprovalStreamSerializer implements StreamSerializer<Approval> {
+    @Override
+    public void write(ObjectDataOutput out, Approval approval) throws IOException {
+        TransactionStreamSerializer.writeCardNumber(out, approval.getCardNumber());
+        out.writeString(approval.getTransactionId());
+        out.writeBoolean(approval.isApproved());
+    }
+
+    @Override
+    public Approval read(ObjectDataInput in) throws IOException {
+        return new Approval(TransactionStreamSerializer.readCardNumber(in), in.readString(), in.readBoolean());
+    }
+
+    @Override
+    public int getTypeId() {
+        return 20004;
+    }
+}
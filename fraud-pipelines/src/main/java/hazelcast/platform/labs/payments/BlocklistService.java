@@ -0,0 +1,196 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.jet.pipeline.ServiceFactories;
+import com.hazelcast.jet.pipeline.ServiceFactory;
+import com.hazelcast.map.EventLostEvent;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.MapEvent;
+import com.hazelcast.map.listener.*;
+import hazelcast.platform.labs.payments.domain.BlockedCard;
+import hazelcast.platform.labs.payments.domain.CardNumbers;
+import hazelcast.platform.labs.payments.domain.Names;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Answers "is this card blocked?" against the "blocked_cards" map, one instance per member.
+ *
+ * Nearly all cards are not blocked, so the member keeps a BloomFilter of the blocked card numbers and
+ * only looks in the IMap when the filter says the card might be blocked: a blocked card or, with the
+ * default settings, about 1 in 100 of the others. Everything else is answered without leaving the
+ * processor thread.
+ *
+ * The filter is built from the map in the background when the job starts, which means reading the
+ * whole map: a few seconds for a million blocked cards.  Until it is ready every card is looked up in
+ * the IMap, so the answers are right from the start, just slower.  An entry listener keeps the filter
+ * up to date.  Cards that are added to the map are added to the filter straight away.  A Bloom filter
+ * can't forget an entry, so when cards are removed (or evicted, or events are lost) the filter is
+ * rebuilt from the map in the background and swapped in.  Rebuilds start at most once per
+ * rebuildIntervalMs, however many cards are removed in the meantime.  Until then a removed card only
+ * costs an unnecessary IMap lookup.
+ */
+public class BlocklistService {
+    private static final CompletableFuture<Boolean> NOT_BLOCKED = CompletableFuture.completedFuture(false);
+
+    private final IMap<String, BlockedCard> blockedCards;
+    private final long expectedEntries;
+    private final double falsePositiveRate;
+    private final long rebuildIntervalMs;
+    private final ScheduledExecutorService rebuilder;
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private final UUID listenerId;
+
+    // null until the first build has finished
+    private volatile BloomFilter filter;
+    private volatile BloomFilter rebuilding;
+    private volatile long lastRebuildStart;
+
+    public BlocklistService(IMap<String, BlockedCard> blockedCards, long expectedEntries, double falsePositiveRate,
+                            long rebuildIntervalMs) {
+        this.blockedCards = blockedCards;
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildIntervalMs = rebuildIntervalMs;
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "blocklist-rebuilder");
+            t.setDaemon(true);
+            return t;
+        });
+
+        // listen before the first build so that nothing added in between is missed
+        BloomFilter first = new BloomFilter(expectedEntries, falsePositiveRate);
+        this.rebuilding = first;
+        this.listenerId = blockedCards.addEntryListener(new Listener(), false);
+        rebuilder.execute(() -> rebuild(first));
+    }
+
+    /*
+     * One instance per member, shared by all processors.  Each member listens to the whole map
+     * because a transaction for any card can arrive at any member.
+     */
+    public static ServiceFactory<?, BlocklistService> factory(long expectedEntries, double falsePositiveRate,
+                                                              long rebuildIntervalMs){
+        return ServiceFactories.sharedService(
+                ctx -> new BlocklistService(ctx.hazelcastInstance().getMap(Names.BLOCKED_CARD_MAP_NAME),
+                        expectedEntries, falsePositiveRate, rebuildIntervalMs),
+                BlocklistService::close);
+    }
+
+    public CompletableFuture<Boolean> isBlocked(String cardNumber){
+        BloomFilter f = filter;
+        if (f != null && !f.mightContain(hash(cardNumber))) return NOT_BLOCKED;
+
+        return blockedCards.getAsync(cardNumber).toCompletableFuture().thenApply(blocked -> blocked != null);
+    }
+
+    public void close(){
+        blockedCards.removeEntryListener(listenerId);
+        rebuilder.shutdownNow();
+    }
+
+    private void add(String cardNumber){
+        long hash = hash(cardNumber);
+
+        // read rebuilding first: once it is null again, filter is already the rebuilt one
+        BloomFilter next = rebuilding;
+        if (next != null) next.add(hash);
+        BloomFilter current = filter;
+        if (current != null) current.add(hash);
+    }
+
+    /*
+     * Removals while a rebuild is waiting to start are covered by it.  Removals after it has started
+     * schedule another one, rebuildIntervalMs after the start of this one.
+     */
+    private void scheduleRebuild(){
+        if (rebuildPending.compareAndSet(false, true)) {
+            long delayMs = Math.max(0, lastRebuildStart + rebuildIntervalMs - System.currentTimeMillis());
+            rebuilder.schedule(() -> {
+                rebuildPending.set(false);
+                rebuild(new BloomFilter(expectedEntries, falsePositiveRate));
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // runs on the rebuilder thread
+    private void rebuild(BloomFilter next){
+        lastRebuildStart = System.currentTimeMillis();
+        rebuilding = next;
+        try {
+            Iterator<Map.Entry<String, BlockedCard>> entries = blockedCards.iterator(10000);
+            while (entries.hasNext()) next.add(hash(entries.next().getKey()));
+        } catch (RuntimeException x) {
+            rebuilding = null;
+            System.out.println("Failed to build the blocked card filter, will try again: " + x);
+            scheduleRebuild();
+            return;
+        }
+
+        filter = next;
+        rebuilding = null;
+    }
+
+    /*
+     * Card numbers in the usual format are packed into a long, which avoids hashing the String.
+     */
+    private static long hash(String cardNumber){
+        long packed = CardNumbers.tryPack(cardNumber);
+        return packed < 0 ? cardNumber.hashCode() : packed;
+    }
+
+    private class Listener implements EntryAddedListener<String, BlockedCard>,
+            EntryMergedListener<String, BlockedCard>,
+            EntryRemovedListener<String, BlockedCard>,
+            EntryEvictedListener<String, BlockedCard>,
+            EntryExpiredListener<String, BlockedCard>,
+            MapClearedListener, MapEvictedListener, EventLostListener {
+
+        @Override
+        public void entryAdded(EntryEvent<String, BlockedCard> event) {
+            add(event.getKey());
+        }
+
+        @Override
+        public void entryMerged(EntryEvent<String, BlockedCard> event) {
+            add(event.getKey());
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<String, BlockedCard> event) {
+            scheduleRebuild();
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<String, BlockedCard> event) {
+            scheduleRebuild();
+        }
+
+        @Override
+        public void entryExpired(EntryEvent<String, BlockedCard> event) {
+            scheduleRebuild();
+        }
+
+        @Override
+        public void mapCleared(MapEvent event) {
+            scheduleRebuild();
+        }
+
+        @Override
+        public void mapEvicted(MapEvent event) {
+            scheduleRebuild();
+        }
+
+        @Override
+        public void eventLost(EventLostEvent event) {
+            scheduleRebuild();
+        }
+    }
+}
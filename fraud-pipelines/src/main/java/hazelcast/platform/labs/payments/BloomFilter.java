@@ -0,0 +1,70 @@
+package hazelcast.platform.labs.payments;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * A Bloom filter over 64 bit hashes that can be added to by one thread while others query it.
+ *
+ * For n expected entries and a false positive rate p, it uses m = -n ln(p) / (ln 2)^2 bits and
+ * k = (m / n) ln 2 bit positions per entry, derived from the hash by double hashing. Some examples:
+ *
+ *   entries     p        bits/entry   memory     k
+ *   1M          1%        9.6         1.2 MB     7
+ *   10M         1%        9.6        12.0 MB     7
+ *   10M         0.1%     14.4        18.0 MB    10
+ *
+ * Holding more entries than expected raises the false positive rate, e.g. 20M entries in a filter
+ * sized for 10M at 1% gives about 16%.  There are no false negatives. Entries can't be removed.
+ */
+public class BloomFilter {
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+
+    public BloomFilter(long expectedEntries, double falsePositiveRate) {
+        long n = Math.max(1, expectedEntries);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.words = new AtomicLongArray((int) Math.max(1, (m + 63) / 64));
+        this.bits = words.length() * 64L;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+    }
+
+    public void add(long hash){
+        long h1 = mix(hash);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; ++i) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old;
+            do {
+                old = words.get(word);
+            } while ((old & mask) == 0 && !words.compareAndSet(word, old, old | mask));
+        }
+    }
+
+    public boolean mightContain(long hash){
+        long h1 = mix(hash);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; ++i) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    public int hashes(){
+        return hashes;
+    }
+
+    public long sizeInBytes(){
+        return words.length() * 8L;
+    }
+
+    // the SplitMix64 finalizer
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,245 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.jet.core.metrics.Metric;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.pipeline.ServiceFactories;
+import com.hazelcast.jet.pipeline.ServiceFactory;
+import com.hazelcast.map.IMap;
+import hazelcast.platform.labs.payments.domain.Card;
+import hazelcast.platform.labs.payments.domain.CardNumbers;
+import hazelcast.platform.labs.payments.domain.Names;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Looks up cards in the "cards" IMap on behalf of one processor.
+ *
+ * The enrichment stage is keyed by card number, so Jet routes every transaction to the member that
+ * owns the card's partition and the IMap lookup never leaves the member. What is left is the hand
+ * off to the partition thread and deserialization of the Card. For hot cards, an optional near cache
+ * shared by the member's processors avoids even that.  It drops cards as soon as they change in the
+ * map and holds each for at most a fixed time, see CardNearCache.
+ *
+ * The cache only holds cards that were found.  Unknown cards are always looked up so that a card
+ * loaded after the job started is picked up straight away.
+ *
+ * Metrics (per processor, visible in Management Center under the stage's vertex)
+ *
+ *   cardLookups        transactions looked up
+ *   cardCacheHits      lookups answered from the near cache
+ *   cardCacheMisses    lookups that went to the IMap
+ *   cardLookupMicros   total time spent in IMap lookups, divide by cardCacheMisses for the average
+ *   unknownCards       lookups for card numbers that are not in the IMap, including invalid ones
+ *   invalidCardNumbers lookups for card numbers that can't be packed (with packedKeys), which are
+ *                      unknown without going to the IMap and are not counted as cache misses
+ *   cardCheckAge*      event age when the card check completes (see EventAgeMetrics)
+ *   cardBatches        calls to lookupAll, divide cardLookups by this for the average batch size
+ *
+ * lookupAll looks up a whole batch of cards with a single IMap.getAll.  getAll blocks, so it runs on a
+ * thread owned by this service rather than on the (cooperative) processor thread.
+ *
+ * With packedKeys the map is keyed by the card number packed into a long and holds PackedCards (see
+ * PackedCard).  Lookups take and return the same String and Card either way; card numbers that
+ * can't be packed are unknown cards without a lookup.
+ */
+public class CardLookupService {
+    private final IMap<Object, Object> cards;
+    private final boolean packedKeys;
+    private final CardNearCache nearCache;
+    private final EventAgeMetrics cardCheckAge = new EventAgeMetrics("cardCheckAge");
+
+    private Metric lookups;
+    private Metric cacheHits;
+    private Metric cacheMisses;
+    private Metric lookupMicros;
+    private Metric unknownCards;
+    private Metric invalidCardNumbers;
+    private Metric batches;
+
+    private ExecutorService batchExecutor;
+
+    @SuppressWarnings("unchecked")
+    public CardLookupService(IMap<?, ?> cards, boolean packedKeys, CardNearCache nearCache) {
+        this.cards = (IMap<Object, Object>) cards;
+        this.packedKeys = packedKeys;
+        this.nearCache = nearCache;
+    }
+
+    /*
+     * One instance per processor because the metrics are not shared.  With nearCacheSize > 0 the
+     * processors of each member share a CardNearCache of that size.
+     */
+    public static ServiceFactory<?, CardLookupService> factory(boolean packedKeys, int nearCacheSize,
+                                                               long nearCacheTtlMs){
+        if (nearCacheSize <= 0) {
+            return ServiceFactories.nonSharedService(
+                    ctx -> new CardLookupService(ctx.hazelcastInstance().getMap(Names.CARD_MAP_NAME),
+                            packedKeys, null),
+                    CardLookupService::close);
+        }
+
+        return ServiceFactory.withCreateContextFn(ctx -> new CardNearCache(
+                        ctx.hazelcastInstance().getMap(Names.CARD_MAP_NAME), nearCacheSize, nearCacheTtlMs))
+                .withDestroyContextFn(CardNearCache::close)
+                .<CardLookupService>withCreateServiceFn((ctx, nearCache) -> new CardLookupService(
+                        ctx.hazelcastInstance().getMap(Names.CARD_MAP_NAME), packedKeys, nearCache))
+                .withDestroyServiceFn(CardLookupService::close);
+    }
+
+    /*
+     * Must be called on the processor thread.  The returned future completes with null if the card
+     * does not exist. eventTimestamp is only used for the cardCheckAge metrics.
+     */
+    public CompletableFuture<Card> lookup(String cardNumber, long eventTimestamp){
+        initMetrics();
+        lookups.increment();
+        long now = System.currentTimeMillis();
+        cardCheckAge.publishIfDue(now);
+
+        Object key = key(cardNumber);
+        if (key == null) {
+            invalidCardNumbers.increment();
+            unknownCards.increment();
+            cardCheckAge.record(eventTimestamp, now);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (nearCache != null) {
+            Card cached = nearCache.get(key, now);
+            if (cached != null) {
+                cacheHits.increment();
+                cardCheckAge.record(eventTimestamp, now);
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        cacheMisses.increment();
+
+        long generation = nearCache == null ? 0 : nearCache.generation();
+        long start = System.nanoTime();
+        return cards.getAsync(key).toCompletableFuture().thenApply(value -> {
+            // this runs on a Hazelcast thread, hence the thread safe metrics
+            lookupMicros.increment((System.nanoTime() - start) / 1000);
+            Card card = toCard(value, cardNumber);
+            long completed = System.currentTimeMillis();
+            cardCheckAge.record(eventTimestamp, completed);
+            if (card == null) {
+                unknownCards.increment();
+            } else if (nearCache != null) {
+                nearCache.put(key, card, generation, completed);
+            }
+            return card;
+        });
+    }
+
+    /*
+     * Must be called on the processor thread.  The returned list has the card for each card number,
+     * or null for cards that do not exist. eventTimestamps are only used for the cardCheckAge metrics.
+     */
+    public CompletableFuture<List<Card>> lookupAll(List<String> cardNumbers, long[] eventTimestamps){
+        initMetrics();
+        int n = cardNumbers.size();
+        lookups.increment(n);
+        batches.increment();
+        long now = System.currentTimeMillis();
+        cardCheckAge.publishIfDue(now);
+
+        Card[] result = new Card[n];
+        Object[] keys = new Object[n];
+        Set<Object> misses = new HashSet<>();
+        int hits = 0;
+        int invalid = 0;
+        for (int i = 0; i < n; ++i) {
+            keys[i] = key(cardNumbers.get(i));
+            if (keys[i] == null) {
+                ++invalid;
+                continue;
+            }
+            if (nearCache != null) result[i] = nearCache.get(keys[i], now);
+            if (result[i] != null) ++hits;
+            else misses.add(keys[i]);
+        }
+
+        cacheHits.increment(hits);
+        invalidCardNumbers.increment(invalid);
+        if (misses.isEmpty()) {
+            unknownCards.increment(n - hits);
+            recordCheckAges(eventTimestamps);
+            return CompletableFuture.completedFuture(Arrays.asList(result));
+        }
+
+        cacheMisses.increment(misses.size());
+        if (batchExecutor == null) batchExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "card-lookup-batch");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long generation = nearCache == null ? 0 : nearCache.generation();
+        long start = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> cards.getAll(misses), batchExecutor).thenApply(found -> {
+            // this runs on the batch thread, hence the thread safe metrics
+            lookupMicros.increment((System.nanoTime() - start) / 1000);
+            long completed = System.currentTimeMillis();
+            int unknown = 0;
+            for (int i = 0; i < n; ++i) {
+                if (result[i] != null) continue;
+
+                result[i] = keys[i] == null ? null : toCard(found.get(keys[i]), cardNumbers.get(i));
+                if (result[i] == null) {
+                    ++unknown;
+                } else if (nearCache != null) {
+                    nearCache.put(keys[i], result[i], generation, completed);
+                }
+            }
+            unknownCards.increment(unknown);
+            recordCheckAges(eventTimestamps);
+            return Arrays.asList(result);
+        });
+    }
+
+    public void close(){
+        if (batchExecutor != null) batchExecutor.shutdownNow();
+    }
+
+    // the map key for the card number, null if the map can't hold it
+    private Object key(String cardNumber){
+        if (!packedKeys) return cardNumber;
+
+        long packed = CardNumbers.tryPack(cardNumber);
+        return packed < 0 ? null : packed;
+    }
+
+    /*
+     * A PackedCard is returned as a Card with the card number that was looked up, so that the
+     * number does not have to be formatted again
+     */
+    private static Card toCard(Object value, String cardNumber){
+        if (value == null || value instanceof Card) return (Card) value;
+
+        return Card.withNumber(cardNumber);
+    }
+
+    private void recordCheckAges(long[] eventTimestamps){
+        long now = System.currentTimeMillis();
+        for (long timestamp : eventTimestamps) cardCheckAge.record(timestamp, now);
+    }
+
+    private void initMetrics(){
+        if (lookups != null) return;
+
+        lookups = Metrics.metric("cardLookups");
+        cacheHits = Metrics.metric("cardCacheHits");
+        cacheMisses = Metrics.metric("cardCacheMisses");
+        lookupMicros = Metrics.threadSafeMetric("cardLookupMicros");
+        unknownCards = Metrics.threadSafeMetric("unknownCards");
+        invalidCardNumbers = Metrics.metric("invalidCardNumbers");
+        batches = Metrics.metric("cardBatches");
+    }
+}
@@ -0,0 +1,151 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.map.EventLostEvent;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.MapEvent;
+import com.hazelcast.map.listener.*;
+import hazelcast.platform.labs.payments.domain.Card;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Hot cards from the "cards" map, shared by the card check processors of one member (see
+ * CardLookupService.factory).  Keyed like the map, see FraudPipeline.CARD_KEY_OPTION.
+ *
+ * A local entry listener drops a card as soon as it is updated, removed, evicted or expires, and the
+ * whole cache when the map is cleared or evicted or events were lost, so a revoked card is not
+ * approved from the cache.  The card check is keyed by the map's key, so a member only caches the
+ * cards it owns, which are the ones its local listener hears about.  After a migration a member may
+ * still hold cards it no longer owns, and it won't hear about those, so every entry also expires
+ * ttlMs after it was read from the map.
+ *
+ * A lookup that was already in flight when a card was dropped could put the old card back, so a card
+ * is only put if nothing has been dropped since its lookup started (see generation).
+ *
+ * At most maxSize cards are held.  When it is full, putting a card drops an arbitrary one.
+ */
+public class CardNearCache {
+    private final IMap<Object, ?> cards;
+    private final int maxSize;
+    private final long ttlMs;
+    private final ConcurrentHashMap<Object, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final UUID listenerId;
+
+    @SuppressWarnings("unchecked")
+    public CardNearCache(IMap<?, ?> cards, int maxSize, long ttlMs) {
+        this.cards = (IMap<Object, ?>) cards;
+        this.maxSize = maxSize;
+        this.ttlMs = ttlMs;
+        this.listenerId = this.cards.addLocalEntryListener(new Listener());
+    }
+
+    /*
+     * Returns the card, or null if it isn't cached or has expired
+     */
+    public Card get(Object key, long now){
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+
+        if (entry.expiresAt <= now) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.card;
+    }
+
+    /*
+     * To be read before looking up a card in the map and passed to put with the result
+     */
+    public long generation(){
+        return invalidations.get();
+    }
+
+    public void put(Object key, Card card, long generation, long now){
+        if (entries.size() >= maxSize) {
+            Iterator<Object> keys = entries.keySet().iterator();
+            if (keys.hasNext()) entries.remove(keys.next());
+        }
+        entries.put(key, new Entry(card, now + ttlMs));
+
+        // a card dropped while it was being looked up may just have been put back
+        if (invalidations.get() != generation) entries.remove(key);
+    }
+
+    public void close(){
+        cards.removeEntryListener(listenerId);
+    }
+
+    private void invalidate(Object key){
+        invalidations.incrementAndGet();
+        entries.remove(key);
+    }
+
+    private void invalidateAll(){
+        invalidations.incrementAndGet();
+        entries.clear();
+    }
+
+    private static class Entry {
+        final Card card;
+        final long expiresAt;
+
+        Entry(Card card, long expiresAt) {
+            this.card = card;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private class Listener implements EntryUpdatedListener<Object, Object>,
+            EntryMergedListener<Object, Object>,
+            EntryRemovedListener<Object, Object>,
+            EntryEvictedListener<Object, Object>,
+            EntryExpiredListener<Object, Object>,
+            MapClearedListener, MapEvictedListener, EventLostListener {
+
+        @Override
+        public void entryUpdated(EntryEvent<Object, Object> event) {
+            invalidate(event.getKey());
+        }
+
+        @Override
+        public void entryMerged(EntryEvent<Object, Object> event) {
+            invalidate(event.getKey());
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<Object, Object> event) {
+            invalidate(event.getKey());
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<Object, Object> event) {
+            invalidate(event.getKey());
+        }
+
+        @Override
+        public void entryExpired(EntryEvent<Object, Object> event) {
+            invalidate(event.getKey());
+        }
+
+        @Override
+        public void mapCleared(MapEvent event) {
+            invalidateAll();
+        }
+
+        @Override
+        public void mapEvicted(MapEvent event) {
+            invalidateAll();
+        }
+
+        @Override
+        public void eventLost(EventLostEvent event) {
+            invalidateAll();
+        }
+    }
+}
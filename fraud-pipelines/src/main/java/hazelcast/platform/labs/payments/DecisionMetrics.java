@@ -0,0 +1,66 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.jet.core.metrics.Metric;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.pipeline.ServiceFactories;
+import com.hazelcast.jet.pipeline.ServiceFactory;
+import hazelcast.platform.labs.payments.domain.DeclineReason;
+import hazelcast.platform.labs.payments.domain.Transaction;
+
+/*
+ * Counts decisions on behalf of the last stage before the sink, one instance per processor.
+ *
+ * Unlike the "total in/out" counts in Management Center, which count items moving between vertices,
+ * these count transactions.  Management Center shows each counter's rate per second.
+ *
+ * Metrics (per processor)
+ *
+ *   approvals                  transactions approved
+ *   declines                   transactions declined, for any reason
+ *   declines_<reason>          transactions declined for each DeclineReason, e.g. declines_unknown_card
+ *   degradedDecisions          transactions decided on the fast path, without the keyed checks (card,
+ *                              velocity, profile), because the pipeline was behind
+ *                              (see FraudPipeline.SHED_LAG_MS_OPTION)
+ *   sinkAge*                   event age when the decision is handed to the sink (see EventAgeMetrics),
+ *                              i.e. the end-to-end latency of the pipeline up to the sink
+ */
+public class DecisionMetrics {
+    private final EventAgeMetrics sinkAge = new EventAgeMetrics("sinkAge");
+
+    private Metric approvals;
+    private Metric declines;
+    private Metric degraded;
+    private Metric []declinesByReason;
+
+    public static ServiceFactory<?, DecisionMetrics> factory(){
+        return ServiceFactories.nonSharedService(ctx -> new DecisionMetrics());
+    }
+
+    // must be called on the processor thread
+    public void record(Transaction txn){
+        initMetrics();
+        if (txn.isApproved()) {
+            approvals.increment();
+        } else {
+            declines.increment();
+            declinesByReason[txn.getDeclineReason().ordinal()].increment();
+        }
+        if (txn.isDegraded()) degraded.increment();
+
+        long now = System.currentTimeMillis();
+        sinkAge.record(txn.getTimestamp(), now);
+        sinkAge.publishIfDue(now);
+    }
+
+    private void initMetrics(){
+        if (approvals != null) return;
+
+        approvals = Metrics.metric("approvals");
+        declines = Metrics.metric("declines");
+        degraded = Metrics.metric("degradedDecisions");
+        DeclineReason []reasons = DeclineReason.values();
+        declinesByReason = new Metric[reasons.length];
+        for (DeclineReason reason : reasons)
+            declinesByReason[reason.ordinal()] = Metrics.metric("declines_" + reason.name().toLowerCase());
+    }
+}
@@ -0,0 +1,62 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.jet.core.metrics.Metric;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.core.metrics.Unit;
+import hazelcast.platform.labs.LatencyHistogram;
+
+/*
+ * The distribution of event age (wall clock time minus event time, in milliseconds) at one point in
+ * the pipeline, published as Jet user metrics for one processor.
+ *
+ * Ages are recorded into a LatencyHistogram, which costs one atomic increment and may be done from any
+ * thread.  Once a second the processor publishes the p50, p99, p99.9 and max of the ages recorded since
+ * the previous publication as the gauges <name>P50, <name>P99, <name>P999 and <name>Max, then starts
+ * over. The gauges keep their last value while no events arrive.
+ *
+ * Because event time is the Kafka record timestamp, the age at the first stage is the time spent in
+ * Kafka and the source, and the difference between the ages at two points is the time spent between
+ * them.
+ */
+public class EventAgeMetrics {
+    private static final long PUBLISH_INTERVAL_MS = 1000;
+
+    private final String name;
+    private final LatencyHistogram ages = new LatencyHistogram();
+    private long nextPublish;
+
+    private Metric p50;
+    private Metric p99;
+    private Metric p999;
+    private Metric max;
+
+    public EventAgeMetrics(String name) {
+        this.name = name;
+    }
+
+    // may be called from any thread
+    public void record(long eventTimestamp, long now){
+        ages.record(now - eventTimestamp);
+    }
+
+    // must be called on the processor thread
+    public void publishIfDue(long now){
+        if (now < nextPublish) return;
+
+        if (p50 == null) {
+            p50 = Metrics.metric(name + "P50", Unit.MS);
+            p99 = Metrics.metric(name + "P99", Unit.MS);
+            p999 = Metrics.metric(name + "P999", Unit.MS);
+            max = Metrics.metric(name + "Max", Unit.MS);
+        }
+
+        if (ages.count() > 0) {
+            p50.set(ages.valueAtPercentile(50));
+            p99.set(ages.valueAtPercentile(99));
+            p999.set(ages.valueAtPercentile(99.9));
+            max.set(ages.max());
+            ages.reset();
+        }
+        nextPublish = now + PUBLISH_INTERVAL_MS;
+    }
+}
@@ -1,22 +1,199 @@
 package hazelcast.platform.labs.payments;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hazelcast.core.Hazelcast;
+import com.hazelcast.function.FunctionEx;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.jet.config.JobConfig;
 import com.hazelcast.jet.config.ProcessingGuarantee;
 import com.hazelcast.jet.datamodel.Tuple2;
-import com.hazelcast.jet.datamodel.Tuple3;
 import com.hazelcast.jet.kafka.KafkaSinks;
-import com.hazelcast.jet.kafka.KafkaSources;
 import com.hazelcast.jet.pipeline.*;
+import hazelcast.platform.labs.payments.domain.Approval;
+import hazelcast.platform.labs.payments.domain.ApprovalCodec;
 import hazelcast.platform.labs.payments.domain.Transaction;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class FraudPipeline {
 
+    /*
+     * Selects the JSON parser: "codec" (the default) uses the streaming TransactionCodec,
+     * "jackson" uses ObjectMapper.readValue
+     */
+    public static final String PARSER_OPTION = "parser";
+    public static final String PARSER_CODEC = "codec";
+    public static final String PARSER_JACKSON = "jackson";
+
+    /*
+     * Selects the approval message format: "json" (the default) or "binary". See ApprovalCodec.
+     */
+    public static final String OUTPUT_FORMAT_OPTION = "output";
+
+    /*
+     * card.check=false skips the card lookup. card.nearCache=N keeps up to N hot cards per member
+     * (0, the default, disables the near cache).  A cached card is dropped as soon as it changes in
+     * the "cards" map, and after card.nearCacheTtlSeconds (default 60) in any case, see CardNearCache.
+     */
+    public static final String CARD_CHECK_OPTION = "card.check";
+    public static final String CARD_NEAR_CACHE_OPTION = "card.nearCache";
+    public static final String CARD_NEAR_CACHE_TTL_SECONDS_OPTION = "card.nearCacheTtlSeconds";
+
+    /*
+     * How the "cards" map is keyed: "string" (the default), by the "NNNN-NNNN-NNNN-NNNN" card number,
+     * or "long", by the card number packed into a long with PackedCard values. This must match the
+     * refdata loader's CARD_KEY setting.
+     */
+    public static final String CARD_KEY_OPTION = "card.key";
+    public static final String CARD_KEY_STRING = "string";
+    public static final String CARD_KEY_LONG = "long";
+
+    /*
+     * batch.size=N (N > 0) checks cards in batches of up to N transactions, with one IMap.getAll per
+     * batch instead of one get per transaction. The default, 0, looks up each card on its own.
+     *
+     * Jet forms a batch from whatever is already queued for the stage, up to N items, and never
+     * waits for more to arrive. A quiet stream gets batches of one with no added latency and a busy
+     * one gets full batches, so there is no separate max-wait setting.
+     *
+     * Only the card lookup is batched.  Parsing, the rules and the other checks still handle one
+     * transaction at a time, and transactions that an earlier check has declined are not looked up.
+     */
+    public static final String BATCH_SIZE_OPTION = "batch.size";
+
+    /*
+     * Transactions over the amount limit of their merchant, from the "merchants" map, are declined.
+     * Each member keeps the merchants in an array, see MerchantTable. merchant.check=false skips the
+     * stage.
+     */
+    public static final String MERCHANT_CHECK_OPTION = "merchant.check";
+
+    /*
+     * Transactions that match a rule in the "fraud_rules" map are declined, see RuleEngine and RuleSet.
+     * Rules can be changed while the job runs. rules.check=false skips the stage.
+     */
+    public static final String RULES_CHECK_OPTION = "rules.check";
+
+    /*
+     * Transactions on cards in the "blocked_cards" map are declined. Each member keeps a Bloom filter
+     * of the blocked cards sized for blocklist.expected entries (default 1,000,000) with a false
+     * positive rate of blocklist.fpp (default 0.01), see BlocklistService and BloomFilter.  The
+     * filter is built in the background when the job starts, and until it is ready every card is
+     * looked up in the map.  Removing cards from the map rebuilds the filter, at most once every
+     * blocklist.rebuildSeconds (default 10).  blocklist.check=false skips the stage.
+     */
+    public static final String BLOCKLIST_CHECK_OPTION = "blocklist.check";
+    public static final String BLOCKLIST_EXPECTED_OPTION = "blocklist.expected";
+    public static final String BLOCKLIST_FPP_OPTION = "blocklist.fpp";
+    public static final String BLOCKLIST_REBUILD_SECONDS_OPTION = "blocklist.rebuildSeconds";
+
+    /*
+     * Per-card velocity limits over a sliding event-time window.  A transaction is declined if, including
+     * itself, the card has more than velocity.maxCount transactions or more than velocity.maxAmount in
+     * total within the last velocity.windowSeconds. velocity.check=false skips the stage.
+     */
+    public static final String VELOCITY_CHECK_OPTION = "velocity.check";
+    public static final String VELOCITY_WINDOW_SECONDS_OPTION = "velocity.windowSeconds";
+    public static final String VELOCITY_BUCKETS_OPTION = "velocity.buckets";
+    public static final String VELOCITY_MAX_COUNT_OPTION = "velocity.maxCount";
+    public static final String VELOCITY_MAX_AMOUNT_OPTION = "velocity.maxAmount";
+
+    /*
+     * Per-card profiles.  With profile.check=true the pipeline keeps a CardProfile for each card: the
+     * running mean and standard deviation of its amounts, its most used merchants and when it was last
+     * used.  A transaction whose amount is more than profile.maxZScore (default 4) standard deviations
+     * above the card's mean is declined, once the card has at least profile.minCount (default 5)
+     * transactions.  Declined transactions are not added to the profile, and neither are amounts that
+     * would be declined while the card has fewer than profile.minCount transactions (see
+     * CardProfile.isOutlier).
+     *
+     * Profiles are written to the "card_profiles" map, with the same keys as the "cards" map so that
+     * a card and its profile are in the same partition.  A card's profile is written after every
+     * profile.writeEvery (default 10) updates, not after each one, and when the card has been idle for
+     * profile.idleHours (default 24) of event time, which is also when the pipeline drops it.  The
+     * next transaction for the card reads the profile back, as does the first one for each card after
+     * the job has started without a snapshot.  The default is profile.check=false.
+     */
+    public static final String PROFILE_CHECK_OPTION = "profile.check";
+    public static final String PROFILE_MAX_Z_SCORE_OPTION = "profile.maxZScore";
+    public static final String PROFILE_MIN_COUNT_OPTION = "profile.minCount";
+    public static final String PROFILE_WRITE_EVERY_OPTION = "profile.writeEvery";
+    public static final String PROFILE_IDLE_HOURS_OPTION = "profile.idleHours";
+
+    /*
+     * Load shedding.  With shed.lagMs=N (N > 0), a transaction whose event age is over N ms when it
+     * reaches the shedding stage, i.e. one that has been queued behind others for that long, and whose
+     * amount is at most shed.maxAmount (default 100) takes a fast path: it gets the merchant and
+     * blocklist checks, which are local to every member, but skips the card lookup, the velocity check
+     * and the profile, which need the transaction to move to the member that owns the card.  Larger
+     * amounts always get every check.  Fast path decisions are counted by the degradedDecisions
+     * metric.  The default, 0, disables shedding.
+     */
+    public static final String SHED_LAG_MS_OPTION = "shed.lagMs";
+    public static final String SHED_MAX_AMOUNT_OPTION = "shed.maxAmount";
+
+    /*
+     * The job's processing guarantee: "exactly_once" (the default), "at_least_once" or "none".
+     *
+     * With at_least_once the snapshots are not aligned and the Kafka sink is not transactional, so
+     * the job is cheaper to run, but after a restart the source replays the transactions read since
+     * the last snapshot.  To keep those from being decided, and their approvals sent, a second time,
+     * the default with at_least_once is dedup=true: each decision is written to the
+     * "seen_transactions" map, keyed by transaction id, before the approval goes to the sink, and a
+     * transaction that is already in the map is dropped before any checks (see SeenTransactions).
+     * The map is not part of the snapshots, so it still has the transactions decided before the
+     * failure.  Entries expire after dedup.windowSeconds (default 300), which must cover the snapshot
+     * interval plus the time the job takes to restart.  This is the map's time-to-live, so it does not
+     * apply if the member configuration already has the map.  This also drops transactions the producer
+     * sent more than once.  Dropped transactions are counted by the duplicates metric.
+     *
+     * An approval that is in the map but still buffered in the sink when the job fails is not sent
+     * again, so it is lost rather than duplicated.  dedup=true can't be used with exactly_once, where
+     * the approvals of the replayed transactions were never committed and so must be sent again.
+     * With none it is off unless set.
+     */
+    public static final String GUARANTEE_OPTION = "guarantee";
+    public static final String DEDUP_OPTION = "dedup";
+    public static final String DEDUP_WINDOW_SECONDS_OPTION = "dedup.windowSeconds";
+
+    /*
+     * How far out of order, in event time, transactions may arrive
+     */
+    public static final String ALLOWED_LAG_MS_OPTION = "allowedLagMs";
+
+    /*
+     * Where main reads transactions from: "kafka" (the default) reads the input topic, "journal" reads
+     * the event journal of the IMap named by journal.map (default "transaction_request"). Approvals are
+     * written to the output topic either way.
+     */
+    public static final String SOURCE_OPTION = "source";
+    public static final String SOURCE_KAFKA = "kafka";
+    public static final String SOURCE_JOURNAL = "journal";
+    public static final String JOURNAL_MAP_OPTION = "journal.map";
+
+    /*
+     * The values of all the *_OPTION constants above, for PipelineOptions.checkNames
+     */
+    public static final Set<String> OPTION_NAMES = optionNames();
+
+    private static Set<String> optionNames(){
+        Set<String> names = new TreeSet<>();
+        for (Field field : FraudPipeline.class.getFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) || !field.getName().endsWith("_OPTION")) continue;
+            try {
+                names.add((String) field.get(null));
+            } catch (IllegalAccessException x) {
+                throw new IllegalStateException(x);
+            }
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
     /*
      * Format a json string with the transaction_id and approval status
      * as shown below
@@ -24,6 +201,9 @@ public class FraudPipeline {
      *    "transaction_id": "12345",
      *    "approved": true
      * }
+     *
+     * The pipeline itself uses ApprovalCodec.encodeJson, which writes the same thing straight into
+     * a byte[].
      */
     public static String resultJson(String txnId, boolean approved){
         return "{ \"transaction_id\": \"" + txnId + "\", \"approved\": " + (approved ? "true" : "false") + "}";
@@ -33,40 +213,38 @@ public class FraudPipeline {
         Properties kafkaConnectionProps = new Properties();
         kafkaConnectionProps.setProperty("bootstrap.servers", bootstrapServers);
         kafkaConnectionProps.setProperty("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
-        kafkaConnectionProps.setProperty("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+        kafkaConnectionProps.setProperty("value.deserializer", "org.apache.kafka.common.serialization.ByteArrayDeserializer");
         kafkaConnectionProps.setProperty("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
-        kafkaConnectionProps.setProperty("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+        kafkaConnectionProps.setProperty("value.serializer", "org.apache.kafka.common.serialization.ByteArraySerializer");
         kafkaConnectionProps.setProperty("auto.offset.reset", "earliest");
         return kafkaConnectionProps;
     }
 
     public static Pipeline createPipeline(String kafkaBootstrapServers, String inputTopic, String outputTopic){
+        return createPipeline(kafkaBootstrapServers, inputTopic, outputTopic, new PipelineOptions());
+    }
+
+    public static Pipeline createPipeline(String kafkaBootstrapServers, String inputTopic, String outputTopic,
+                                          PipelineOptions options){
         Pipeline pipeline = Pipeline.create();
 
         Properties kafkaProperties = kafkaProperties(kafkaBootstrapServers);
 
         /*
-         * Create a Source to read from the input topic
-         */
-        StreamSource<Map.Entry<String, String>> source =
-                KafkaSources.kafka(kafkaProperties, inputTopic);
-
-        /*
-         * Create a Sink to write to the output topic. This sink will expect a Map.Entry<K,V> with the
-         * entry key specifying the message key and the entry value specifying the message value
-         */
-        Sink<Map.Entry<String, String>> sink = KafkaSinks.kafka(kafkaProperties, outputTopic);
-
-        /*
-         * We need to parse and format JSON. We use Jackson for that.  We don't want to create a new
-         * instance of ObjectMapper every time an event is processed. Instead, we create a "service"
-         * which Hazelcast will instantiate once (per node) and re-use during event processing.
+         * Create a Sink to write approvals to the output topic.  The sink extracts the message key
+         * (the credit card number) and encodes the message value itself, so there is no need for an
+         * intermediate Map.Entry or String per approval.
          */
-        ServiceFactory<?, ObjectMapper> jsonService = ServiceFactories.sharedService(ctx -> new ObjectMapper());
+        ApprovalCodec.Format outputFormat = ApprovalCodec.format(options.getString(OUTPUT_FORMAT_OPTION, "json"));
+        Sink<Approval> sink = KafkaSinks.kafka(
+                kafkaProperties,
+                outputTopic,
+                Approval::getCardNumber,
+                approval -> ApprovalCodec.encode(outputFormat, approval.getTransactionId(), approval.isApproved()));
 
         /*
-         * Read a stream of Map.Entry<String,String> from the stream. entry.key is the cc# and
-         * entry.value is a json string similar to the one shown below
+         * Read a stream of RawTransaction from the stream. The key is the cc# and the value is
+         * the UTF-8 bytes of a json string similar to the one shown below
          *
          * {
          *   "card_number": "6771-8952-0704-5425",
@@ -75,58 +253,162 @@ public class FraudPipeline {
          *   "merchant_id": "8222"
          * }
          *
+         * The Kafka record timestamps are used as event time. With source=journal the messages come
+         * from an IMap instead, and the time they are read is used as event time.
          */
-        StreamStage<Map.Entry<String, String>> cardTransactions =
-                pipeline.readFrom(source).withIngestionTimestamps().setName("read topic");
+        long allowedLag = options.getLong(ALLOWED_LAG_MS_OPTION, 5000);
+        String sourceType = options.getString(SOURCE_OPTION, SOURCE_KAFKA);
+        StreamStage<RawTransaction> cardTransactions;
+        if (SOURCE_KAFKA.equals(sourceType)) {
+            cardTransactions = pipeline.readFrom(KafkaTransactionSource.create(kafkaProperties, inputTopic))
+                    .withNativeTimestamps(allowedLag)
+                    .setName("read topic");
+        } else if (SOURCE_JOURNAL.equals(sourceType)) {
+            cardTransactions = readFrom(pipeline,
+                    journalSource(options.getString(JOURNAL_MAP_OPTION, "transaction_request")),
+                    RawTransaction::fromStringEntry,
+                    allowedLag);
+        } else {
+            throw new IllegalArgumentException("Unknown " + SOURCE_OPTION + ": " + sourceType);
+        }
 
         /*
-         * Use the json service to parse the JSON message into an instance
-         * of Transaction.
+         * For each transaction, write a message where the key is the credit card number and the value
+         * contains the transaction_id and the approval_status (see the "resultJson" method) directly
+         * to the output topic
          */
+        FraudStages.approvals(cardTransactions, options).writeTo(sink);
 
-        StreamStage<Transaction> transactions =
-                cardTransactions.mapUsingService(jsonService, (svc, entry) -> svc.readValue(entry.getValue(), Transaction.class));
-
+        return pipeline;
+    }
 
-        /*
-         * This stage returns the tuple (credit_card_number, transaction_id, true)
-         */
-        StreamStage<Tuple3<String, String, Boolean>> approvals =
-                transactions.map(txn -> Tuple3.tuple3(txn.getCardNumber(), txn.getTransactionId(), true));
+    /*
+     * The same fraud checks as above, but reading from any source of RawTransaction and writing to any
+     * sink. Each approval is written as a Map.Entry where the key is the credit card number and the
+     * value is the encoded approval message. This is what the test harness in the benchmarks module
+     * uses to run the job without Kafka.
+     *
+     * Event time is taken from RawTransaction.getTimestamp
+     */
+    public static Pipeline createPipeline(StreamSource<RawTransaction> source,
+                                          Sink<? super Map.Entry<String, byte[]>> sink,
+                                          PipelineOptions options){
+        Pipeline pipeline = Pipeline.create();
 
-        // LAB 2: Modify the map operation above. The last item in the tuple should be false (not approved) if
-        //        the transaction amount is over 5000
+        StreamStage<RawTransaction> cardTransactions = pipeline.readFrom(source)
+                .withTimestamps(RawTransaction::getTimestamp, options.getLong(ALLOWED_LAG_MS_OPTION, 5000))
+                .setName("read source");
 
+        writeApprovals(cardTransactions, sink, options);
+        return pipeline;
+    }
 
-        /*
-         * For each transaction, create a Map.Entry where the key is the credit card number and the value is
-         * a piece of json that contains the transaction_id and the approval_status (see the "resultJson" method)
-         *
-         * Then write the entry directly to the output topic
-         *
-         * Note:the Hazelcast Tuple2 class implements Map.Entry
-         */
+    /*
+     * As above, for a source of anything that can be turned into a RawTransaction, for example
+     *
+     *   createPipeline(journalSource("transaction_request"), RawTransaction::fromStringEntry, sink, options)
+     *
+     * or a source of Map.Entry<String, byte[]> with RawTransaction::fromBytesEntry. Event time is the
+     * timestamp set by toRawTransaction.
+     */
+    public static <T> Pipeline createPipeline(StreamSource<T> source,
+                                              FunctionEx<? super T, RawTransaction> toRawTransaction,
+                                              Sink<? super Map.Entry<String, byte[]>> sink,
+                                              PipelineOptions options){
+        Pipeline pipeline = Pipeline.create();
 
-        approvals.map(approval -> Tuple2.tuple2(
-                approval.f0(),
-                FraudPipeline.resultJson(approval.f1(), approval.f2()) )
-        ).writeTo(sink);
+        StreamStage<RawTransaction> cardTransactions = readFrom(pipeline, source, toRawTransaction,
+                options.getLong(ALLOWED_LAG_MS_OPTION, 5000));
 
+        writeApprovals(cardTransactions, sink, options);
         return pipeline;
     }
 
-    // expects arguments: kafka bootstrap servers, input kafka topic, output kafka topic
+    /*
+     * Reads transactions put into an IMap by producers running in, or connected to, the cluster, without
+     * a round trip through Kafka. The map must have an event journal, which hazelcast.yaml configures for
+     * every map whose name ends in "_request". The key is the credit card number and the value is the
+     * transaction JSON.
+     *
+     * Every put, including one that replaces an existing entry, is a transaction. Reading starts with
+     * the entries put after the job starts.
+     */
+    public static StreamSource<Map.Entry<String, String>> journalSource(String mapName){
+        return Sources.mapJournal(mapName, JournalInitialPosition.START_FROM_CURRENT);
+    }
+
+    private static <T> StreamStage<RawTransaction> readFrom(Pipeline pipeline,
+                                                            StreamSource<T> source,
+                                                            FunctionEx<? super T, RawTransaction> toRawTransaction,
+                                                            long allowedLag){
+        return pipeline.readFrom(source)
+                .withoutTimestamps()
+                .setName("read source")
+                .map(toRawTransaction)
+                .setName("to raw transaction")
+                .addTimestamps(RawTransaction::getTimestamp, allowedLag);
+    }
+
+    private static void writeApprovals(StreamStage<RawTransaction> cardTransactions,
+                                       Sink<? super Map.Entry<String, byte[]>> sink,
+                                       PipelineOptions options){
+        ApprovalCodec.Format outputFormat = ApprovalCodec.format(options.getString(OUTPUT_FORMAT_OPTION, "json"));
+        FraudStages.approvals(cardTransactions, options)
+                .map(approval -> Tuple2.tuple2(
+                        approval.getCardNumber(),
+                        ApprovalCodec.encode(outputFormat, approval.getTransactionId(), approval.isApproved())))
+                .setName("encode")
+                .writeTo(sink);
+    }
+
+    /*
+     * Registers serializers with the job for what it sends between members and writes to snapshots:
+     * the transactions and approvals, and the per-card state of the stateful stages. Because they are
+     * registered per job, the members need no serialization configuration. (The Compact serializers
+     * in CompactSerializers are for clients and member configurations that want them; a job-level
+     * serializer takes precedence inside the job.)
+     */
+    public static JobConfig registerSerializers(JobConfig jobConfig){
+        return jobConfig
+                .registerSerializer(Transaction.class, TransactionStreamSerializer.class)
+                .registerSerializer(Approval.class, ApprovalStreamSerializer.class)
+                .registerSerializer(VelocityState.class, VelocityState.Serializer.class)
+                .registerSerializer(ProfileState.class, ProfileState.Serializer.class);
+    }
+
+    public static boolean packedCardKeys(PipelineOptions options){
+        String cardKey = options.getString(CARD_KEY_OPTION, CARD_KEY_STRING);
+        if (CARD_KEY_LONG.equals(cardKey)) return true;
+        if (CARD_KEY_STRING.equals(cardKey)) return false;
+
+        throw new IllegalArgumentException("Unknown " + CARD_KEY_OPTION + ": " + cardKey);
+    }
+
+    public static ProcessingGuarantee processingGuarantee(PipelineOptions options){
+        String guarantee = options.getString(GUARANTEE_OPTION, "exactly_once");
+        try {
+            return ProcessingGuarantee.valueOf(guarantee.toUpperCase());
+        } catch (IllegalArgumentException x) {
+            throw new IllegalArgumentException("Unknown " + GUARANTEE_OPTION + ": " + guarantee);
+        }
+    }
+
+    // expects arguments: kafka bootstrap servers, input kafka topic, output kafka topic, followed by
+    // optional name=value settings (see PipelineOptions)
     public static void main(String []args){
-        if (args.length != 3){
+        if (args.length < 3){
             System.err.println("Please provide 3 arguments: kafka bootstrap servers, input kafka topic and output kafka topic");
             System.exit(1);
         }
 
-        Pipeline pipeline = createPipeline(args[0], args[1], args[2]);
+        PipelineOptions options = PipelineOptions.parse(args, 3).checkNames(OPTION_NAMES);
+        Pipeline pipeline = createPipeline(args[0], args[1], args[2], options);
         pipeline.setPreserveOrder(false);   // nothing in here requires order
         JobConfig jobConfig = new JobConfig();
         jobConfig.setName("Fraud Checker");
-        jobConfig.setProcessingGuarantee(ProcessingGuarantee.EXACTLY_ONCE);
+        options.copyTo(jobConfig);
+        jobConfig.setProcessingGuarantee(processingGuarantee(options));
+        registerSerializers(jobConfig);
         HazelcastInstance hz = Hazelcast.bootstrappedInstance();
         hz.getJet().newJob(pipeline, jobConfig);
     }
@@ -0,0 +1,376 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.function.FunctionEx;
+import com.hazelcast.jet.Util;
+import com.hazelcast.jet.config.ProcessingGuarantee;
+import com.hazelcast.jet.datamodel.Tuple3;
+import com.hazelcast.jet.pipeline.ServiceFactory;
+import com.hazelcast.jet.pipeline.Sinks;
+import com.hazelcast.jet.pipeline.StreamStage;
+import hazelcast.platform.labs.payments.domain.Approval;
+import hazelcast.platform.labs.payments.domain.CardProfile;
+import hazelcast.platform.labs.payments.domain.CardNumbers;
+import hazelcast.platform.labs.payments.domain.DeclineReason;
+import hazelcast.platform.labs.payments.domain.Names;
+import hazelcast.platform.labs.payments.domain.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static hazelcast.platform.labs.payments.FraudPipeline.*;
+
+/*
+ * The fraud checking stages of FraudPipeline, independent of where the transactions come from and where
+ * the approvals go. Any pipeline that can produce a StreamStage<RawTransaction> with event timestamps
+ * can attach them. The options are the *_OPTION settings documented in FraudPipeline.
+ */
+public class FraudStages {
+    /*
+     * Parses the transactions, runs the fraud checks and returns an Approval
+     * (credit_card_number, transaction_id, approved) for each one
+     */
+    public static StreamStage<Approval> approvals(StreamStage<RawTransaction> cardTransactions,
+                                                                          PipelineOptions options){
+        StreamStage<Transaction> transactions =
+                parseTransactions(cardTransactions, options.getString(PARSER_OPTION, PARSER_CODEC));
+
+        /*
+         * Drop transactions that have been decided already, whether the producer sent them twice or
+         * the source replayed them after a restart (see SeenTransactions)
+         */
+        boolean dedup = deduplicating(options);
+        long dedupWindowSeconds = options.getLong(DEDUP_WINDOW_SECONDS_OPTION, 300);
+        if (dedup)
+            transactions = transactions.mapUsingServiceAsyncBatched(SeenTransactions.factory(dedupWindowSeconds),
+                            SeenTransactions.MAX_BATCH_SIZE, SeenTransactions::checkAll)
+                    .setName("drop seen");
+
+        long shedLagMs = options.getLong(SHED_LAG_MS_OPTION, 0);
+        if (shedLagMs > 0)
+            transactions = markDegraded(transactions, shedLagMs, options.getInt(SHED_MAX_AMOUNT_OPTION, 100));
+
+        /*
+         * Decline transactions over the merchant's amount limit. The merchants are in memory in every
+         * member, so this needs neither a lookup nor a particular member. Transactions with a merchant
+         * that is not in the "merchants" map are let through.
+         */
+        if (options.getBoolean(MERCHANT_CHECK_OPTION, true)) {
+            transactions = transactions.mapUsingService(MerchantTable.factory(10000), (merchants, txn) -> {
+                        int limit = merchants.amountLimit(txn.getMerchantId());
+                        if (limit != MerchantTable.UNKNOWN && txn.getAmount() > limit)
+                            txn.decline(DeclineReason.MERCHANT_LIMIT);
+
+                        return txn;
+                    })
+                    .setName("check merchant");
+        }
+
+        /*
+         * Decline transactions that match one of the rules in the "fraud_rules" map. The rules are
+         * compiled in every member and swapped when the map changes, so this is local too.
+         */
+        if (options.getBoolean(RULES_CHECK_OPTION, true)) {
+            transactions = transactions.mapUsingService(RuleEngine.factory(), (engine, txn) -> {
+                        if (txn.isApproved() && engine.ruleSet().firstMatch(txn) >= 0)
+                            txn.decline(DeclineReason.RULE);
+
+                        return txn;
+                    })
+                    .setName("check rules");
+        }
+
+        /*
+         * Decline transactions for cards in the "blocked_cards" map. This stage is not keyed: the
+         * Bloom filter answers for almost every card without a lookup, so there is no point in moving
+         * the transaction to the member that owns the card first.
+         */
+        if (options.getBoolean(BLOCKLIST_CHECK_OPTION, true)) {
+            ServiceFactory<?, BlocklistService> blocklistService = BlocklistService.factory(
+                    options.getLong(BLOCKLIST_EXPECTED_OPTION, 1000000),
+                    options.getDouble(BLOCKLIST_FPP_OPTION, 0.01),
+                    options.getLong(BLOCKLIST_REBUILD_SECONDS_OPTION, 10) * 1000);
+
+            transactions = transactions.mapUsingServiceAsync(blocklistService, (svc, txn) ->
+                            svc.isBlocked(txn.getCardNumber()).thenApply(blocked -> {
+                                if (blocked) txn.decline(DeclineReason.BLOCKED_CARD);
+                                return txn;
+                            }))
+                    .setName("check blocklist");
+        }
+
+        /*
+         * The card, velocity and profile checks are keyed, so each transaction moves to the member that owns its
+         * card first.  Under load shedding the degraded transactions go around them and rejoin the
+         * others before the decision.
+         */
+        if (shedLagMs > 0) {
+            StreamStage<Transaction> fastPath = transactions.filter(Transaction::isDegraded).setName("fast path");
+            StreamStage<Transaction> fullPath = transactions.filter(txn -> !txn.isDegraded()).setName("full path");
+            transactions = keyedChecks(fullPath, options).merge(fastPath).setName("rejoin fast path");
+        } else {
+            transactions = keyedChecks(transactions, options);
+        }
+
+        /*
+         * This stage returns an Approval (credit_card_number, transaction_id, approved). It also counts
+         * approvals and declines and records the event age on the way to the sink (see DecisionMetrics).
+         */
+        StreamStage<Approval> approvals =
+                transactions.mapUsingService(DecisionMetrics.factory(), (metrics, txn) -> {
+                    metrics.record(txn);
+                    return new Approval(txn.getCardNumber(), txn.getTransactionId(), txn.isApproved());
+                }).setName("decide");
+
+        // LAB 2: Modify the map operation above. The Approval should be not approved if
+        //        the transaction amount is over 5000
+
+        /*
+         * Record the decision in the "seen_transactions" map before it goes to the sink, see
+         * SeenTransactions
+         */
+        if (dedup)
+            approvals = approvals.mapUsingServiceAsyncBatched(SeenTransactions.factory(dedupWindowSeconds),
+                            SeenTransactions.MAX_BATCH_SIZE, SeenTransactions::recordAll)
+                    .setName("record seen");
+
+        return approvals;
+    }
+
+    /*
+     * The checks that are keyed by card: the card lookup, the velocity limits and the profile
+     */
+    private static StreamStage<Transaction> keyedChecks(StreamStage<Transaction> transactions,
+                                                        PipelineOptions options){
+        /*
+         * Decline transactions for cards that are not in the "cards" map.
+         *
+         * Grouping by card number before the lookup makes Jet send each transaction to the member that
+         * owns that card's partition, so the lookup is always local (this is what mapUsingIMap does
+         * too). CardLookupService adds an optional near cache and lookup metrics on top.  The grouping
+         * key has to be the map's key, so with card.key=long it is the packed card number.
+         */
+        if (options.getBoolean(CARD_CHECK_OPTION, true)) {
+            boolean packedKeys = packedCardKeys(options);
+            ServiceFactory<?, CardLookupService> cardService = CardLookupService.factory(packedKeys,
+                    options.getInt(CARD_NEAR_CACHE_OPTION, 0),
+                    options.getLong(CARD_NEAR_CACHE_TTL_SECONDS_OPTION, 60) * 1000);
+            FunctionEx<Transaction, Object> cardKeyFn = cardKeyFn(packedKeys);
+
+            int batchSize = options.getInt(BATCH_SIZE_OPTION, 0);
+            if (batchSize > 0) {
+                transactions = checkCardsBatched(transactions, cardKeyFn, cardService, batchSize);
+            } else {
+                transactions = transactions.groupingKey(cardKeyFn)
+                        .mapUsingServiceAsync(cardService, (svc, cardKey, txn) -> {
+                            // no need to look up a card that has already been declined
+                            if (!txn.isApproved()) return CompletableFuture.completedFuture(txn);
+
+                            return svc.lookup(txn.getCardNumber(), txn.getTimestamp()).thenApply(card -> {
+                                if (card == null) txn.decline(DeclineReason.UNKNOWN_CARD);
+                                return txn;
+                            });
+                        })
+                        .setName("check card");
+            }
+        }
+
+        if (options.getBoolean(VELOCITY_CHECK_OPTION, true))
+            transactions = checkVelocity(transactions, options);
+
+        if (options.getBoolean(PROFILE_CHECK_OPTION, false))
+            transactions = checkProfile(transactions, options);
+
+        return transactions;
+    }
+
+    /*
+     * The key of a card in the "cards" map, see FraudPipeline.CARD_KEY_OPTION.  Every keyed stage
+     * groups by it so that a card's state, its entries in the maps and the lookups for it are all on
+     * the member that owns the card.  A card number that can't be packed keeps its String key rather
+     * than sharing -1 with all the others; it is not in the map either way.
+     */
+    private static FunctionEx<Transaction, Object> cardKeyFn(boolean packedKeys){
+        if (!packedKeys) return Transaction::getCardNumber;
+
+        return txn -> {
+            long packed = CardNumbers.tryPack(txn.getCardNumber());
+            return packed < 0 ? txn.getCardNumber() : packed;
+        };
+    }
+
+    /*
+     * Marks the transactions that should take the fast path: those that are more than lagMs old and
+     * for at most maxAmount.  The event age is measured once, here, so a transaction can't end up on
+     * both paths or neither.
+     */
+    private static StreamStage<Transaction> markDegraded(StreamStage<Transaction> transactions,
+                                                         long lagMs, int maxAmount){
+        return transactions.map(txn -> {
+                    if (txn.getAmount() <= maxAmount && System.currentTimeMillis() - txn.getTimestamp() > lagMs)
+                        txn.setDegraded(true);
+
+                    return txn;
+                })
+                .setName("shed load");
+    }
+
+    /*
+     * The card check with one IMap.getAll per batch.  The batch is grouped by card number so, as
+     * above, every lookup in it is local.  Only the lookup is batched: transactions already declined
+     * are left out of the getAll, and everything before and after this stage still handles one
+     * transaction at a time.
+     */
+    private static StreamStage<Transaction> checkCardsBatched(StreamStage<Transaction> transactions,
+                                                              FunctionEx<Transaction, Object> cardKeyFn,
+                                                              ServiceFactory<?, CardLookupService> cardService,
+                                                              int batchSize){
+        return transactions.groupingKey(cardKeyFn)
+                .mapUsingServiceAsyncBatched(cardService, batchSize, (svc, cardKeys, txns) -> {
+                    List<Transaction> toCheck = new ArrayList<>(txns.size());
+                    for (Transaction txn : txns)
+                        if (txn.isApproved()) toCheck.add(txn);
+
+                    if (toCheck.isEmpty()) return CompletableFuture.completedFuture(txns);
+
+                    List<String> cardNumbers = new ArrayList<>(toCheck.size());
+                    long[] timestamps = new long[toCheck.size()];
+                    for (int i = 0; i < timestamps.length; ++i) {
+                        cardNumbers.add(toCheck.get(i).getCardNumber());
+                        timestamps[i] = toCheck.get(i).getTimestamp();
+                    }
+
+                    return svc.lookupAll(cardNumbers, timestamps).thenApply(cards -> {
+                        for (int i = 0; i < cards.size(); ++i)
+                            if (cards.get(i) == null) toCheck.get(i).decline(DeclineReason.UNKNOWN_CARD);
+
+                        return txns;
+                    });
+                })
+                .setName("check card (batched)");
+    }
+
+    /*
+     * Parse the JSON message into an instance of Transaction. Messages that can't be parsed are
+     * dropped (and counted, see TransactionParser).
+     */
+    private static StreamStage<Transaction> parseTransactions(StreamStage<RawTransaction> messages,
+                                                              String parser){
+        return messages.mapUsingService(TransactionParser.factory(parser), TransactionParser::parse)
+                .setName("parse (" + parser + ")");
+    }
+
+    /*
+     * Whether to drop transactions that have been decided already, see FraudPipeline.DEDUP_OPTION.  The
+     * map that remembers them is not rolled back to the snapshot when the job restarts.  With
+     * exactly_once the approvals of the replayed transactions were never committed to the sink, so
+     * dropping those transactions would lose the approvals: the option is rejected.
+     */
+    private static boolean deduplicating(PipelineOptions options){
+        ProcessingGuarantee guarantee = processingGuarantee(options);
+        boolean dedup = options.getBoolean(DEDUP_OPTION, guarantee == ProcessingGuarantee.AT_LEAST_ONCE);
+        if (dedup && guarantee == ProcessingGuarantee.EXACTLY_ONCE)
+            throw new IllegalArgumentException(DEDUP_OPTION + "=true can't be used with "
+                    + GUARANTEE_OPTION + "=exactly_once");
+
+        return dedup;
+    }
+
+    /*
+     * Keeps a VelocityState per card and declines transactions that take the card over the count or
+     * amount limit for the window. The state is dropped (by the TTL) once a card has been idle for a
+     * whole window, so memory is proportional to the number of recently active cards rather than to
+     * the number of cards.
+     */
+    private static StreamStage<Transaction> checkVelocity(StreamStage<Transaction> transactions,
+                                                          PipelineOptions options){
+        long windowMs = options.getLong(VELOCITY_WINDOW_SECONDS_OPTION, 60) * 1000;
+        int bucketCount = options.getInt(VELOCITY_BUCKETS_OPTION, 6);
+        long bucketMs = Math.max(1, windowMs / bucketCount);
+        long maxCount = options.getLong(VELOCITY_MAX_COUNT_OPTION, 10);
+        long maxAmount = options.getLong(VELOCITY_MAX_AMOUNT_OPTION, 1000000);
+
+        return transactions.groupingKey(cardKeyFn(packedCardKeys(options)))
+                .mapStateful(
+                        windowMs,
+                        () -> new VelocityState(bucketCount),
+                        (state, cardKey, txn) -> {
+                            state.add(txn.getTimestamp(), txn.getAmount(), bucketMs);
+                            if (state.count() > maxCount)
+                                txn.decline(DeclineReason.VELOCITY_COUNT);
+                            else if (state.amount() > maxAmount)
+                                txn.decline(DeclineReason.VELOCITY_AMOUNT);
+
+                            return txn;
+                        },
+                        (state, cardKey, watermark) -> null)
+                .setName("check velocity");
+    }
+
+    /*
+     * Keeps a CardProfile per card and declines transactions whose amount is far above the card's
+     * usual amounts.  Grouping by the "cards" map key means the profile state is kept on the member
+     * that owns the card, and so does the "card_profiles" entry it is read from and written to.
+     *
+     * The "load profile" stage attaches the card's stored profile to the first transaction after the
+     * card has been idle (see ProfileLoader) and the state merges it in (see ProfileState), so a card
+     * evicted for being idle, or a job started without a snapshot, carries on from the stored history.
+     *
+     * Amounts that are outliers (CardProfile.isOutlier) are kept out of the mean and variance.  Once the
+     * card has minCount transactions they are declined too; before that they are let through but still
+     * left out, so that an unusual amount early on does not become part of the card's baseline.
+     *
+     * The stage emits a (transaction, card key, profile) triple.  The profile is a copy, and is only
+     * there when it is due to be written: every writeEvery updates and when the card is evicted, in
+     * which case there is no transaction.  A branch takes the profiles to the map, where Sinks.map
+     * groups them into one putAll per member, and the transactions carry on.
+     */
+    private static StreamStage<Transaction> checkProfile(StreamStage<Transaction> transactions,
+                                                         PipelineOptions options){
+        double maxZScore = options.getDouble(PROFILE_MAX_Z_SCORE_OPTION, 4);
+        long minCount = options.getLong(PROFILE_MIN_COUNT_OPTION, 5);
+        long writeEvery = Math.max(1, options.getLong(PROFILE_WRITE_EVERY_OPTION, 10));
+        long idleMs = options.getLong(PROFILE_IDLE_HOURS_OPTION, 24) * 3600 * 1000;
+        FunctionEx<Transaction, Object> cardKeyFn = cardKeyFn(packedCardKeys(options));
+
+        StreamStage<Tuple3<Transaction, Object, CardProfile>> profiled =
+                transactions.groupingKey(cardKeyFn)
+                .mapUsingServiceAsync(ProfileLoader.factory(idleMs),
+                        (loader, cardKey, txn) -> loader.load(cardKey, txn))
+                .setName("load profile")
+                .groupingKey(t -> cardKeyFn.apply(t.f0()))
+                .mapStateful(
+                        idleMs,
+                        ProfileState::new,
+                        (state, cardKey, t) -> {
+                            Transaction txn = t.f0();
+                            if (t.f1() != null) state.load(t.f1());
+
+                            CardProfile profile = state.profile();
+                            boolean outlier = profile.isOutlier(txn.getAmount(), maxZScore, minCount);
+                            if (outlier && txn.isApproved() && profile.getCount() >= minCount)
+                                txn.decline(DeclineReason.AMOUNT_OUTLIER);
+
+                            if (outlier || !txn.isApproved()) return profiled(txn, cardKey, null);
+
+                            profile.add(txn.getAmount(), txn.getMerchantId(), txn.getTimestamp());
+                            return profiled(txn, cardKey,
+                                    profile.getCount() % writeEvery == 0 ? profile.copy() : null);
+                        },
+                        (state, cardKey, watermark) -> state.profile().getCount() == 0
+                                ? null : profiled(null, cardKey, state.profile()))
+                .setName("check profile");
+
+        profiled.filter(t -> t.f2() != null)
+                .map(t -> Util.entry(t.f1(), t.f2()))
+                .setName("profile update")
+                .writeTo(Sinks.map(Names.CARD_PROFILE_MAP_NAME));
+
+        return profiled.map(Tuple3::f0).setName("profiled transaction");
+    }
+
+    private static Tuple3<Transaction, Object, CardProfile> profiled(Transaction txn, Object cardKey,
+                                                                     CardProfile profile){
+        return Tuple3.tuple3(txn, cardKey, profile);
+    }
+}
@@ -0,0 +1,27 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.jet.kafka.KafkaSources;
+import com.hazelcast.jet.pipeline.StreamSource;
+
+import java.util.Properties;
+
+/*
+ * The Kafka source of FraudPipeline.  Message values are read as raw bytes so that they can be parsed
+ * without first being decoded into a String.
+ *
+ * The projection lambda takes a Kafka ConsumerRecord.  It is kept out of FraudPipeline because Java
+ * deserializes every lambda of a class through the same generated method, which refers to the types
+ * of all of them: with this lambda in FraudPipeline, a job that doesn't read Kafka at all, such as the
+ * one PipelineHarness runs, would still need the Kafka client classes to deserialize its own lambdas.
+ */
+final class KafkaTransactionSource {
+    private KafkaTransactionSource() {
+    }
+
+    static StreamSource<RawTransaction> create(Properties kafkaProperties, String topic){
+        return KafkaSources.<String, byte[], RawTransaction>kafka(
+                kafkaProperties,
+                record -> new RawTransaction(record.key(), record.value(), record.timestamp()),
+                topic);
+    }
+}
@@ -0,0 +1,96 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.jet.config.JobConfig;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/*
+ * Optional settings that select between variants of the fraud pipeline.  They are given on the
+ * command line after the required arguments, in name=value form, for example
+ *
+ *   clc job submit fraud-pipelines.jar redpanda:9092 transactions approvals parser=jackson
+ *
+ * Every option is also copied into the JobConfig arguments so that it is visible in Management
+ * Center and can be read on the cluster side with ctx.jobConfig().getArgument(name).
+ *
+ * Options are checked rather than guessed at: checkNames rejects names that nobody reads, so a
+ * misspelt option fails the submission instead of silently running the default, and booleans must be
+ * "true" or "false".
+ */
+public class PipelineOptions implements Serializable {
+    private final Map<String, String> values;
+
+    public PipelineOptions() {
+        this.values = new HashMap<>();
+    }
+
+    public static PipelineOptions parse(String []args, int firstOption){
+        PipelineOptions result = new PipelineOptions();
+        for (int i = firstOption; i < args.length; ++i) {
+            int eq = args[i].indexOf('=');
+            if (eq <= 0)
+                throw new IllegalArgumentException("Options must have the form name=value but got: " + args[i]);
+
+            result.set(args[i].substring(0, eq).trim(), args[i].substring(eq + 1).trim());
+        }
+        return result;
+    }
+
+    public PipelineOptions set(String name, String value){
+        values.put(name, value);
+        return this;
+    }
+
+    public String getString(String name, String defaultValue){
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    public int getInt(String name, int defaultValue){
+        String value = values.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public long getLong(String name, long defaultValue){
+        String value = values.get(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    public double getDouble(String name, double defaultValue){
+        String value = values.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue){
+        String value = values.get(name);
+        if (value == null) return defaultValue;
+        if (value.equalsIgnoreCase("true")) return true;
+        if (value.equalsIgnoreCase("false")) return false;
+        throw new IllegalArgumentException(name + " must be true or false but got: " + value);
+    }
+
+    /*
+     * Throws if any option is not one of the given names
+     */
+    public PipelineOptions checkNames(Collection<String> knownNames){
+        TreeSet<String> unknown = new TreeSet<>(values.keySet());
+        unknown.removeAll(knownNames);
+        if (!unknown.isEmpty())
+            throw new IllegalArgumentException("Unknown options " + unknown + ", expected some of "
+                    + new TreeSet<>(knownNames));
+
+        return this;
+    }
+
+    public void copyTo(JobConfig jobConfig){
+        values.forEach(jobConfig::setArgument);
+    }
+
+    @Override
+    public String toString() {
+        return "PipelineOptions" + values;
+    }
+}
@@ -0,0 +1,74 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.jet.datamodel.Tuple2;
+import com.hazelcast.jet.pipeline.ServiceFactories;
+import com.hazelcast.jet.pipeline.ServiceFactory;
+import com.hazelcast.map.IMap;
+import hazelcast.platform.labs.payments.domain.CardProfile;
+import hazelcast.platform.labs.payments.domain.Names;
+import hazelcast.platform.labs.payments.domain.Transaction;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Reads a card's profile from the "card_profiles" map the first time the "check profile" stage sees
+ * the card, so that a card keeps its history when its state has been evicted for being idle or the
+ * job has been restarted without a snapshot.  One instance per processor.
+ *
+ * The stage is keyed by the same card key as the map, so the getAsync is a local read.  To avoid one
+ * for every transaction, the loader remembers the event time it last saw each card and only reads
+ * the map for a card it has not seen for idleMs, the idle time after which the stateful stage evicts
+ * the card too.  Cards it has not seen for idleMs are forgotten, so it holds about as many entries as
+ * the stateful stage.  The only cost when it gets this wrong is a wasted read: ProfileState merges the
+ * stored profile at most once.
+ *
+ * The transaction is paired with the stored profile, NONE if there is none, or with null
+ * if the card was seen recently.
+ */
+public class ProfileLoader {
+    public static final CardProfile NONE = new CardProfile();
+
+    private final IMap<Object, CardProfile> profiles;
+    private final long idleMs;
+    private final LinkedHashMap<Object, Long> lastSeen = new LinkedHashMap<>(1024, 0.75f, true);
+
+    public ProfileLoader(IMap<Object, CardProfile> profiles, long idleMs) {
+        this.profiles = profiles;
+        this.idleMs = idleMs;
+    }
+
+    public static ServiceFactory<?, ProfileLoader> factory(long idleMs){
+        return ServiceFactories.nonSharedService(
+                ctx -> new ProfileLoader(ctx.hazelcastInstance().getMap(Names.CARD_PROFILE_MAP_NAME), idleMs));
+    }
+
+    /*
+     * Must be called on the processor thread
+     */
+    public CompletableFuture<Tuple2<Transaction, CardProfile>> load(Object cardKey, Transaction txn){
+        long timestamp = txn.getTimestamp();
+        Long previous = lastSeen.get(cardKey);
+        lastSeen.put(cardKey, previous == null ? timestamp : Math.max(previous, timestamp));
+        forgetIdle(timestamp);
+
+        if (previous != null && timestamp - previous < idleMs)
+            return CompletableFuture.completedFuture(Tuple2.tuple2(txn, null));
+
+        return profiles.getAsync(cardKey).toCompletableFuture()
+                .thenApply(stored -> Tuple2.tuple2(txn, stored == null ? NONE : stored));
+    }
+
+    /*
+     * The map is in access order, so the cards that have been idle longest come first
+     */
+    private void forgetIdle(long now){
+        Iterator<Map.Entry<Object, Long>> entries = lastSeen.entrySet().iterator();
+        while (entries.hasNext()) {
+            if (now - entries.next().getValue() < idleMs) break;
+            entries.remove();
+        }
+    }
+}
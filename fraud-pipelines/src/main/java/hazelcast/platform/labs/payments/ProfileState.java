@@ -0,0 +1,68 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import hazelcast.platform.labs.payments.domain.CardProfile;
+
+import java.io.IOException;
+
+/*
+ * The "check profile" stage's state for one card: the card's profile and whether the profile stored in
+ * the "card_profiles" map has been merged into it yet.
+ *
+ * The stored profile arrives with one of the card's transactions (see ProfileLoader) but not
+ * necessarily the first one, so the state may already hold a few transactions when it does.  It is
+ * merged in (CardProfile.merge) exactly once; the flag stops a later load, which would read back a
+ * copy this state wrote itself, from counting the same transactions twice.
+ *
+ * The flag is written to snapshots along with the profile, so a job restored from a snapshot ignores
+ * the loads that follow the restart.  FraudPipeline.registerSerializers registers Serializer, below.
+ */
+public class ProfileState {
+    private final CardProfile profile;
+    private boolean loaded;
+
+    public ProfileState() {
+        this(new CardProfile(), false);
+    }
+
+    private ProfileState(CardProfile profile, boolean loaded) {
+        this.profile = profile;
+        this.loaded = loaded;
+    }
+
+    public CardProfile profile() {
+        return profile;
+    }
+
+    /*
+     * Merges the stored profile into the state unless one has been merged already.  stored is
+     * ProfileLoader.NONE if there was nothing in the map.
+     */
+    public void load(CardProfile stored) {
+        if (loaded) return;
+
+        profile.merge(stored);
+        loaded = true;
+    }
+
+    public static class Serializer implements StreamSerializer<ProfileState> {
+        @Override
+        public void write(ObjectDataOutput out, ProfileState state) throws IOException {
+            out.writeBoolean(state.loaded);
+            out.writeObject(state.profile);
+        }
+
+        @Override
+        public ProfileState read(ObjectDataInput in) throws IOException {
+            boolean loaded = in.readBoolean();
+            return new ProfileState(in.readObject(), loaded);
+        }
+
+        @Override
+        public int getTypeId() {
+            return 20005;
+        }
+    }
+}
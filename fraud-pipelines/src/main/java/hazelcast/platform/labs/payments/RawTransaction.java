@@ -0,0 +1,47 @@
+package hazelcast.platform.labs.payments;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/*
+ * A transaction message as it comes off the input topic, before parsing: the message key (the card
+ * number), the message value (JSON bytes) and the Kafka record timestamp, which becomes the event
+ * time of the Transaction. Other sources (see FraudPipeline.createPipeline) are adapted to the same
+ * shape.
+ */
+public class RawTransaction {
+    private final String key;
+    private final byte[] value;
+    private final long timestamp;
+
+    public RawTransaction(String key, byte[] value, long timestamp) {
+        this.key = key;
+        this.value = value;
+        this.timestamp = timestamp;
+    }
+
+    /*
+     * For sources that don't carry a timestamp, such as an IMap event journal. The time the entry
+     * was read is used instead.
+     */
+    public static RawTransaction fromStringEntry(Map.Entry<String, String> entry) {
+        return new RawTransaction(entry.getKey(), entry.getValue().getBytes(StandardCharsets.UTF_8),
+                System.currentTimeMillis());
+    }
+
+    public static RawTransaction fromBytesEntry(Map.Entry<String, byte[]> entry) {
+        return new RawTransaction(entry.getKey(), entry.getValue(), System.currentTimeMillis());
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
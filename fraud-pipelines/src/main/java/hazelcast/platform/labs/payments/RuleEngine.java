@@ -0,0 +1,147 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.jet.pipeline.ServiceFactories;
+import com.hazelcast.jet.pipeline.ServiceFactory;
+import com.hazelcast.map.EventLostEvent;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.MapEvent;
+import com.hazelcast.map.listener.*;
+import hazelcast.platform.labs.payments.domain.Names;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * The fraud rules in the "fraud_rules" map, compiled into a RuleSet, one instance per member.
+ *
+ * The map's key is the rule's name and the value its definition, see RuleSet, for example
+ *
+ *   clc -c docker map set -n fraud_rules large_amount "amount > 5000"
+ *
+ * The rules are loaded when the job starts and an entry listener keeps a copy of the definitions up to
+ * date.  Each change recompiles the whole set, which is small, and swaps it in, so rules can be added,
+ * changed or removed while the job runs, without a restart.  A transaction is checked against either
+ * the old set or the new one, never a mixture.  Rules that can't be compiled are reported in the
+ * member's output and ignored.
+ *
+ * The listener only hands each change to this service's own thread, which does the recompiling (or,
+ * if events were lost, reads the whole map again), so Hazelcast's event threads are never held up.
+ * Changes are applied in the order they arrive.  The first load happens in the constructor, so the
+ * job's first transactions already see the rules.
+ */
+public class RuleEngine {
+    private final IMap<String, String> rules;
+    private final Map<String, String> definitions = new HashMap<>();
+    private final ExecutorService compiler;
+    private final UUID listenerId;
+
+    private volatile RuleSet ruleSet = RuleSet.EMPTY;
+
+    public RuleEngine(IMap<String, String> rules) {
+        this.rules = rules;
+        this.compiler = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "fraud-rule-compiler");
+            t.setDaemon(true);
+            return t;
+        });
+
+        // listen before loading so that nothing changed in between is missed
+        this.listenerId = rules.addEntryListener(new Listener(), true);
+        reload();
+    }
+
+    public static ServiceFactory<?, RuleEngine> factory(){
+        return ServiceFactories.sharedService(
+                ctx -> new RuleEngine(ctx.hazelcastInstance().getMap(Names.FRAUD_RULE_MAP_NAME)),
+                RuleEngine::close);
+    }
+
+    public RuleSet ruleSet(){
+        return ruleSet;
+    }
+
+    public void close(){
+        rules.removeEntryListener(listenerId);
+        compiler.shutdownNow();
+    }
+
+    private synchronized void put(String name, String definition){
+        if (definition == null) definitions.remove(name);
+        else definitions.put(name, definition);
+
+        compile();
+    }
+
+    private synchronized void reload(){
+        definitions.clear();
+        definitions.putAll(rules);
+        compile();
+    }
+
+    private void compile(){
+        RuleSet next = RuleSet.compile(definitions);
+        if (!next.rejected().equals(ruleSet.rejected())) {
+            next.rejected().forEach((name, reason) ->
+                    System.out.println("Ignoring fraud rule " + name + ": " + reason));
+        }
+        ruleSet = next;
+    }
+
+    private class Listener implements EntryAddedListener<String, String>,
+            EntryUpdatedListener<String, String>,
+            EntryMergedListener<String, String>,
+            EntryRemovedListener<String, String>,
+            EntryEvictedListener<String, String>,
+            EntryExpiredListener<String, String>,
+            MapClearedListener, MapEvictedListener, EventLostListener {
+
+        @Override
+        public void entryAdded(EntryEvent<String, String> event) {
+            compiler.execute(() -> put(event.getKey(), event.getValue()));
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<String, String> event) {
+            compiler.execute(() -> put(event.getKey(), event.getValue()));
+        }
+
+        @Override
+        public void entryMerged(EntryEvent<String, String> event) {
+            compiler.execute(() -> put(event.getKey(), event.getValue()));
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<String, String> event) {
+            compiler.execute(() -> put(event.getKey(), null));
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<String, String> event) {
+            compiler.execute(() -> put(event.getKey(), null));
+        }
+
+        @Override
+        public void entryExpired(EntryEvent<String, String> event) {
+            compiler.execute(() -> put(event.getKey(), null));
+        }
+
+        @Override
+        public void mapCleared(MapEvent event) {
+            compiler.execute(RuleEngine.this::reload);
+        }
+
+        @Override
+        public void mapEvicted(MapEvent event) {
+            compiler.execute(RuleEngine.this::reload);
+        }
+
+        @Override
+        public void eventLost(EventLostEvent event) {
+            compiler.execute(RuleEngine.this::reload);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package hazelcast.platform.labs.payments;
+
+import hazelcast.platform.labs.payments.domain.Merchant;
+import hazelcast.platform.labs.payments.domain.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Fraud rules compiled for evaluation on every transaction.
+ *
+ * A rule is one or more conditions joined by "and", each comparing a field of the transaction with an
+ * integer, for example
+ *
+ *   amount > 5000
+ *   merchant == 42 and amount >= 100
+ *   hour < 6 and amount > 1000
+ *
+ * The fields are amount, merchant (the numeric merchant id, -1 if it isn't a number) and hour (the hour
+ * of the day of the event time, in UTC, 0 to 23). The operators are <, <=, >, >=, == and !=.  A
+ * transaction that matches any rule is declined.
+ *
+ * The conditions of all the rules are held in parallel arrays, a field, an operator and an operand
+ * for each, with the rules one after the other in order of name.  Evaluation reads the three fields
+ * once and then walks the arrays, moving on to the next rule at the first condition that fails.  It
+ * doesn't allocate, and a rule costs a few array reads and comparisons.
+ *
+ * Instances are immutable, so one can be shared by all processors and replaced as a whole.
+ */
+public class RuleSet {
+    public static final RuleSet EMPTY = compile(Map.of());
+
+    private static final byte AMOUNT = 0;
+    private static final byte MERCHANT = 1;
+    private static final byte HOUR = 2;
+    private static final String[] FIELDS = {"amount", "merchant", "hour"};
+
+    private static final byte LT = 0;
+    private static final byte LE = 1;
+    private static final byte GT = 2;
+    private static final byte GE = 3;
+    private static final byte EQ = 4;
+    private static final byte NE = 5;
+    private static final String[] OPERATORS = {"<", "<=", ">", ">=", "==", "!="};
+
+    private static final Pattern AND = Pattern.compile("\\s+(?i:and)\\s+");
+    private static final Pattern CONDITION = Pattern.compile("\\s*(\\w+)\\s*(<=|>=|==|!=|<|>)\\s*(-?\\d+)\\s*");
+
+    private static final long MS_PER_HOUR = 3_600_000;
+
+    private final String[] names;
+    private final int[] ruleEnds;      // the conditions of rule r are ruleEnds[r - 1] (or 0) to ruleEnds[r]
+    private final byte[] fields;
+    private final byte[] operators;
+    private final long[] operands;
+    private final Map<String, String> rejected;
+
+    private RuleSet(String[] names, int[] ruleEnds, byte[] fields, byte[] operators, long[] operands,
+                    Map<String, String> rejected) {
+        this.names = names;
+        this.ruleEnds = ruleEnds;
+        this.fields = fields;
+        this.operators = operators;
+        this.operands = operands;
+        this.rejected = rejected;
+    }
+
+    /*
+     * Compiles rule definitions, by rule name. Rules that can't be parsed are left out, see rejected().
+     */
+    public static RuleSet compile(Map<String, String> definitions){
+        List<String> names = new ArrayList<>();
+        List<long[]> conditions = new ArrayList<>();    // field, operator, operand
+        List<Integer> ends = new ArrayList<>();
+        Map<String, String> rejected = new TreeMap<>();
+
+        for (Map.Entry<String, String> rule : new TreeMap<>(definitions).entrySet()) {
+            try {
+                List<long[]> parsed = parse(rule.getValue());
+                names.add(rule.getKey());
+                conditions.addAll(parsed);
+                ends.add(conditions.size());
+            } catch (IllegalArgumentException x) {
+                rejected.put(rule.getKey(), x.getMessage());
+            }
+        }
+
+        int n = conditions.size();
+        byte[] fields = new byte[n];
+        byte[] operators = new byte[n];
+        long[] operands = new long[n];
+        for (int c = 0; c < n; ++c) {
+            fields[c] = (byte) conditions.get(c)[0];
+            operators[c] = (byte) conditions.get(c)[1];
+            operands[c] = conditions.get(c)[2];
+        }
+        int[] ruleEnds = new int[ends.size()];
+        for (int r = 0; r < ruleEnds.length; ++r) ruleEnds[r] = ends.get(r);
+
+        return new RuleSet(names.toArray(new String[0]), ruleEnds, fields, operators, operands, rejected);
+    }
+
+    private static List<long[]> parse(String definition){
+        if (definition == null || definition.isBlank()) throw new IllegalArgumentException("empty rule");
+
+        List<long[]> result = new ArrayList<>();
+        for (String condition : AND.split(definition.trim())) {
+            Matcher m = CONDITION.matcher(condition);
+            if (!m.matches())
+                throw new IllegalArgumentException("expected <field> <operator> <integer> but got: " + condition);
+
+            int field = indexOf(FIELDS, m.group(1).toLowerCase(), "field");
+            int operator = indexOf(OPERATORS, m.group(2), "operator");
+            long operand;
+            try {
+                operand = Long.parseLong(m.group(3));
+            } catch (NumberFormatException x) {
+                throw new IllegalArgumentException("not an integer: " + m.group(3));
+            }
+            result.add(new long[]{field, operator, operand});
+        }
+        return result;
+    }
+
+    private static int indexOf(String[] values, String value, String what){
+        for (int i = 0; i < values.length; ++i)
+            if (values[i].equals(value)) return i;
+
+        throw new IllegalArgumentException("unknown " + what + ": " + value);
+    }
+
+    /*
+     * Returns the index of the first rule, in order of name, that the transaction matches, or -1
+     */
+    public int firstMatch(Transaction txn){
+        return firstMatch(txn.getAmount(), Merchant.numericId(txn.getMerchantId()),
+                (int) Math.floorMod(txn.getTimestamp() / MS_PER_HOUR, 24L));
+    }
+
+    public int firstMatch(int amount, int merchant, int hour){
+        int start = 0;
+        for (int r = 0; r < ruleEnds.length; ++r) {
+            int end = ruleEnds[r];
+            int c = start;
+            while (c < end && holds(c, amount, merchant, hour)) ++c;
+            if (c == end) return r;
+
+            start = end;
+        }
+        return -1;
+    }
+
+    private boolean holds(int c, int amount, int merchant, int hour){
+        long value;
+        switch (fields[c]) {
+            case AMOUNT: value = amount; break;
+            case MERCHANT: value = merchant; break;
+            default: value = hour;
+        }
+
+        long operand = operands[c];
+        switch (operators[c]) {
+            case LT: return value < operand;
+            case LE: return value <= operand;
+            case GT: return value > operand;
+            case GE: return value >= operand;
+            case EQ: return value == operand;
+            default: return value != operand;
+        }
+    }
+
+    public int size(){
+        return names.length;
+    }
+
+    public String name(int rule){
+        return names[rule];
+    }
+
+    /*
+     * The rules that could not be compiled, and why
+     */
+    public Map<String, String> rejected(){
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return "RuleSet{" + names.length + " rules, " + fields.length + " conditions, rejected=" + rejected + '}';
+    }
+}
@@ -0,0 +1,139 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.jet.core.metrics.Metric;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.pipeline.ServiceFactories;
+import com.hazelcast.jet.pipeline.ServiceFactory;
+import com.hazelcast.map.IMap;
+import hazelcast.platform.labs.payments.domain.Approval;
+import hazelcast.platform.labs.payments.domain.Names;
+import hazelcast.platform.labs.payments.domain.Transaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * The transactions decided recently, kept in the "seen_transactions" map so that each is decided, and
+ * its approval sent, only once.  One instance per processor.
+ *
+ * The map is keyed by transaction id and holds the decision.  Entries expire after the map's
+ * time-to-live, which the factory sets to ttlSeconds unless the member configuration already has
+ * a configuration for the map, so the map holds about rate * ttlSeconds entries.
+ *
+ * The map is not part of the job's snapshots, which is the point: after a restart the source replays
+ * what it read since the last snapshot, and the stateful stages go back to that snapshot, but the map
+ * still has the transactions that were decided before the failure, so the replayed copies are
+ * dropped.  The time-to-live must cover the snapshot interval plus the time the job takes to restart.
+ *
+ * The decision is written before the approval goes to the sink.  An approval that is in the map but
+ * still buffered in the sink when the job fails is therefore lost rather than sent twice.
+ *
+ * Both directions work on batches, with one getAll or setAll for the whole batch rather than one
+ * operation per transaction.  getAll blocks, so it runs on a thread owned by this service rather
+ * than on the (cooperative) processor thread.
+ *
+ * Metrics (per processor)
+ *
+ *   duplicates     transactions dropped because they had been decided already
+ */
+public class SeenTransactions {
+    public static final int MAX_BATCH_SIZE = 256;
+
+    private final IMap<String, Boolean> seen;
+    private Metric duplicates;
+    private ExecutorService checkExecutor;
+
+    public SeenTransactions(IMap<String, Boolean> seen) {
+        this.seen = seen;
+    }
+
+    public static ServiceFactory<?, SeenTransactions> factory(long ttlSeconds){
+        return ServiceFactories.nonSharedService(ctx -> {
+                    HazelcastInstance hz = ctx.hazelcastInstance();
+                    configureMap(hz.getConfig(), ttlSeconds);
+                    return new SeenTransactions(hz.getMap(Names.SEEN_TRANSACTION_MAP_NAME));
+                },
+                SeenTransactions::close);
+    }
+
+    /*
+     * Must be called on the processor thread.  The returned list has each transaction, or null, which
+     * drops it, if it has been decided already or comes earlier in the same batch.
+     */
+    public CompletableFuture<List<Transaction>> checkAll(List<Transaction> txns){
+        initMetrics();
+        Set<String> ids = new HashSet<>();
+        for (Transaction txn : txns) ids.add(txn.getTransactionId());
+
+        if (checkExecutor == null) checkExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "seen-transactions-check");
+            t.setDaemon(true);
+            return t;
+        });
+
+        return CompletableFuture.supplyAsync(() -> seen.getAll(ids), checkExecutor).thenApply(found -> {
+            // this runs on the check thread, hence the thread safe metric
+            List<Transaction> result = new ArrayList<>(txns.size());
+            Set<String> unseen = new HashSet<>();
+            int dropped = 0;
+            for (Transaction txn : txns) {
+                String id = txn.getTransactionId();
+                if (!found.containsKey(id) && unseen.add(id)) {
+                    result.add(txn);
+                } else {
+                    result.add(null);
+                    ++dropped;
+                }
+            }
+            duplicates.increment(dropped);
+            return result;
+        });
+    }
+
+    /*
+     * Records the decisions.  The returned future completes with the approvals once the map has them.
+     */
+    public CompletableFuture<List<Approval>> recordAll(List<Approval> approvals){
+        Map<String, Boolean> decisions = new HashMap<>();
+        for (Approval approval : approvals) decisions.put(approval.getTransactionId(), approval.isApproved());
+
+        return seen.setAllAsync(decisions).toCompletableFuture().thenApply(ignored -> approvals);
+    }
+
+    public void close(){
+        if (checkExecutor != null) checkExecutor.shutdownNow();
+    }
+
+    /*
+     * Adds a configuration with the time-to-live for the map unless the member already has one,
+     * for example from hazelcast.yaml or an earlier job.  Adding the same configuration again, as
+     * every processor does, is harmless.
+     */
+    private static void configureMap(Config config, long ttlSeconds){
+        MapConfig existing = config.getMapConfigOrNull(Names.SEEN_TRANSACTION_MAP_NAME);
+        if (existing == null) {
+            config.addMapConfig(new MapConfig(Names.SEEN_TRANSACTION_MAP_NAME)
+                    .setTimeToLiveSeconds((int) ttlSeconds));
+        } else if (existing.getTimeToLiveSeconds() != ttlSeconds) {
+            System.out.println("The " + Names.SEEN_TRANSACTION_MAP_NAME + " map is already configured with a time-to-live of "
+                    + existing.getTimeToLiveSeconds() + "s, " + FraudPipeline.DEDUP_WINDOW_SECONDS_OPTION + "="
+                    + ttlSeconds + " does not apply");
+        }
+    }
+
+    private void initMetrics(){
+        if (duplicates != null) return;
+
+        duplicates = Metrics.threadSafeMetric("duplicates");
+    }
+}
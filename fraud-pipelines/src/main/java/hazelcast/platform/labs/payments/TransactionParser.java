@@ -0,0 +1,87 @@
+package hazelcast.platform.labs.payments;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.jet.core.metrics.Metric;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.pipeline.ServiceFactories;
+import com.hazelcast.jet.pipeline.ServiceFactory;
+import hazelcast.platform.labs.payments.domain.Transaction;
+import hazelcast.platform.labs.payments.domain.TransactionCodec;
+
+/*
+ * Parses transaction messages on behalf of one processor, using either the streaming TransactionCodec
+ * or Jackson's ObjectMapper (see FraudPipeline.PARSER_OPTION).
+ *
+ * A message that can't be parsed is counted and dropped rather than failing the job, and so is one
+ * without a card_number or a transaction_id: every later stage relies on both.
+ *
+ * Metrics (per processor)
+ *
+ *   parseFailures    messages dropped because they could not be parsed or lacked a required field
+ *   parseAge*        event age when the message is parsed (see EventAgeMetrics), which is mostly the
+ *                    time spent in Kafka
+ */
+public class TransactionParser {
+    private final TransactionCodec codec;
+    private final ObjectMapper mapper;
+    private final EventAgeMetrics parseAge = new EventAgeMetrics("parseAge");
+    private Metric parseFailures;
+
+    private TransactionParser(TransactionCodec codec, ObjectMapper mapper) {
+        this.codec = codec;
+        this.mapper = mapper;
+    }
+
+    /*
+     * TransactionCodec keeps scanning state so, unlike ObjectMapper, it can't be shared. ObjectMapper
+     * could be, but the metrics can't, so each processor gets its own parser either way.
+     */
+    public static ServiceFactory<?, TransactionParser> factory(String parser){
+        create(parser); // fail at submission rather than on the cluster
+        return ServiceFactories.nonSharedService(ctx -> create(parser));
+    }
+
+    static TransactionParser create(String parser){
+        if (FraudPipeline.PARSER_JACKSON.equals(parser))
+            return new TransactionParser(null, new ObjectMapper());
+        else if (FraudPipeline.PARSER_CODEC.equals(parser))
+            return new TransactionParser(new TransactionCodec(), null);
+        else
+            throw new IllegalArgumentException("Unknown " + FraudPipeline.PARSER_OPTION + ": " + parser);
+    }
+
+    /*
+     * Returns null, which drops the message, if it can't be parsed or lacks a required field.
+     */
+    public Transaction parse(RawTransaction msg){
+        if (parseFailures == null) parseFailures = Metrics.metric("parseFailures");
+
+        Transaction txn = decode(msg.getValue());
+        if (txn == null) {
+            parseFailures.increment();
+            return null;
+        }
+        txn.setTimestamp(msg.getTimestamp());
+
+        long now = System.currentTimeMillis();
+        parseAge.record(msg.getTimestamp(), now);
+        parseAge.publishIfDue(now);
+        return txn;
+    }
+
+    /*
+     * Returns null if value can't be parsed or lacks the card number or the transaction id
+     */
+    Transaction decode(byte[] value){
+        Transaction txn;
+        try {
+            txn = codec != null ? codec.decode(value) : mapper.readValue(value, Transaction.class);
+        } catch (Exception x) {
+            return null;
+        }
+
+        if (txn.getCardNumber() == null || txn.getTransactionId() == null) return null;
+
+        return txn;
+    }
+}
@@ -0,0 +1,102 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/*
+ * Per-card transaction count and total amount over a sliding event-time window.
+ *
+ * The window is divided into a fixed number of buckets held in a ring.  To keep the state small
+ * enough for millions of cards, each bucket is a single long holding both the transaction count
+ * (high 16 bits, saturating at 65535) and the amount total (low 48 bits). With the default 6 buckets
+ * the state is one object plus a 6 element long[], about 100 bytes per active card.  Cards with no
+ * activity for a whole window are evicted by the stage's TTL, so only active cards use memory.
+ *
+ * Event time comes from the Kafka record timestamp.  Events that arrive late, but inside the window,
+ * are counted in their own bucket.  Events older than the whole window are not counted.
+ *
+ * The state is written to every snapshot. FraudPipeline.registerSerializers registers Serializer,
+ * below, with the job so that it is written as a few longs rather than with Java serialization.
+ */
+public class VelocityState implements Serializable {
+    private static final int COUNT_SHIFT = 48;
+    private static final long SUM_MASK = (1L << COUNT_SHIFT) - 1;
+    private static final long MAX_COUNT = 0xFFFF;
+
+    private final long[] buckets;
+    private long newestBucket = Long.MIN_VALUE;
+
+    public VelocityState(int bucketCount) {
+        this.buckets = new long[bucketCount];
+    }
+
+    private VelocityState(long[] buckets, long newestBucket) {
+        this.buckets = buckets;
+        this.newestBucket = newestBucket;
+    }
+
+    /*
+     * Adds a transaction to the window. bucketMs is passed in rather than stored
+     * so that it does not take up space in every card's state.
+     */
+    public void add(long timestamp, int txnAmount, long bucketMs) {
+        long bucket = timestamp / bucketMs;
+        int n = buckets.length;
+
+        if (bucket > newestBucket) {
+            // clear the buckets that are sliding into the window
+            long toClear = newestBucket == Long.MIN_VALUE ? n : Math.min(n, bucket - newestBucket);
+            for (long b = bucket - toClear + 1; b <= bucket; ++b) buckets[slot(b)] = 0;
+            newestBucket = bucket;
+        }
+
+        if (bucket > newestBucket - n) {
+            int slot = slot(bucket);
+            long packed = buckets[slot];
+            long c = Math.min(MAX_COUNT, (packed >>> COUNT_SHIFT) + 1);
+            long s = Math.min(SUM_MASK, (packed & SUM_MASK) + Math.max(0, txnAmount));
+            buckets[slot] = (c << COUNT_SHIFT) | s;
+        }
+    }
+
+    // the number of transactions in the window
+    public long count() {
+        long result = 0;
+        for (long packed : buckets) result += packed >>> COUNT_SHIFT;
+        return result;
+    }
+
+    // the total amount of the transactions in the window
+    public long amount() {
+        long result = 0;
+        for (long packed : buckets) result += packed & SUM_MASK;
+        return result;
+    }
+
+    private int slot(long bucket) {
+        return (int) Math.floorMod(bucket, (long) buckets.length);
+    }
+
+    public static class Serializer implements StreamSerializer<VelocityState> {
+        @Override
+        public void write(ObjectDataOutput out, VelocityState state) throws IOException {
+            out.writeLong(state.newestBucket);
+            out.writeLongArray(state.buckets);
+        }
+
+        @Override
+        public VelocityState read(ObjectDataInput in) throws IOException {
+            long newestBucket = in.readLong();
+            return new VelocityState(in.readLongArray(), newestBucket);
+        }
+
+        @Override
+        public int getTypeId() {
+            return 20001;
+        }
+    }
+}
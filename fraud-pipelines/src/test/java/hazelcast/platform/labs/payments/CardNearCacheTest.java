@@ -0,0 +1,129 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import hazelcast.platform.labs.payments.domain.Card;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CardNearCacheTest {
+    private static final String CARD = "4000-0000-0000-0001";
+    private static final long TIMEOUT_MS = 10000;
+
+    private static HazelcastInstance hz;
+
+    private IMap<String, Card> cards;
+    private CardNearCache cache;
+
+    @BeforeAll
+    public static void startMember() {
+        System.setProperty("hazelcast.logging.type", "none");
+        Config config = new Config();
+        config.setClusterName("card-near-cache-test");
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getJoin().getAutoDetectionConfig().setEnabled(false);
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        hz = Hazelcast.newHazelcastInstance(config);
+    }
+
+    @AfterAll
+    public static void stopMember() {
+        hz.shutdown();
+    }
+
+    @BeforeEach
+    public void createCache() {
+        cards = hz.getMap("cards_" + System.nanoTime());
+        cards.put(CARD, Card.withNumber(CARD));
+        cache = new CardNearCache(cards, 100, 60000);
+    }
+
+    @AfterEach
+    public void closeCache() {
+        cache.close();
+        cards.destroy();
+    }
+
+    @Test
+    public void dropsRemovedCard() throws InterruptedException {
+        cacheCard();
+
+        cards.remove(CARD);
+        awaitDropped();
+    }
+
+    @Test
+    public void dropsUpdatedCard() throws InterruptedException {
+        cacheCard();
+
+        cards.put(CARD, Card.withNumber(CARD));
+        awaitDropped();
+    }
+
+    @Test
+    public void dropsAllCardsWhenMapIsCleared() throws InterruptedException {
+        cacheCard();
+
+        cards.clear();
+        awaitDropped();
+    }
+
+    @Test
+    public void expiresCard() {
+        long now = System.currentTimeMillis();
+        cache.put(CARD, Card.withNumber(CARD), cache.generation(), now);
+
+        assertNotNull(cache.get(CARD, now + 59999));
+        assertNull(cache.get(CARD, now + 60000));
+    }
+
+    @Test
+    public void doesNotPutBackCardDroppedDuringLookup() throws InterruptedException {
+        long generation = cache.generation();
+        cards.remove(CARD);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (cache.generation() == generation) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for the removal event");
+            Thread.sleep(10);
+        }
+
+        // the result of a lookup that started before the removal
+        cache.put(CARD, Card.withNumber(CARD), generation, System.currentTimeMillis());
+        assertNull(cache.get(CARD, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void holdsAtMostMaxSizeCards() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 1000; ++i)
+            cache.put("card" + i, Card.withNumber("card" + i), cache.generation(), now);
+
+        int cached = 0;
+        for (int i = 0; i < 1000; ++i)
+            if (cache.get("card" + i, now) != null) ++cached;
+        assertTrue(cached <= 100, cached + " cards cached");
+    }
+
+    private void cacheCard() {
+        long now = System.currentTimeMillis();
+        cache.put(CARD, cards.get(CARD), cache.generation(), now);
+        assertNotNull(cache.get(CARD, now));
+    }
+
+    private void awaitDropped() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (cache.get(CARD, System.currentTimeMillis()) != null) {
+            assertTrue(System.currentTimeMillis() < deadline, "the card is still cached");
+            Thread.sleep(10);
+        }
+    }
+}
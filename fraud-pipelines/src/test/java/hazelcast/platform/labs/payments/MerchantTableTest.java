@@ -0,0 +1,113 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import hazelcast.platform.labs.payments.domain.Merchant;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MerchantTableTest {
+    private static final long TIMEOUT_MS = 10000;
+
+    private static HazelcastInstance hz;
+
+    private IMap<String, Merchant> merchants;
+    private MerchantTable table;
+
+    @BeforeAll
+    public static void startMember() {
+        System.setProperty("hazelcast.logging.type", "none");
+        Config config = new Config();
+        config.setClusterName("merchant-table-test");
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getJoin().getAutoDetectionConfig().setEnabled(false);
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        hz = Hazelcast.newHazelcastInstance(config);
+    }
+
+    @AfterAll
+    public static void stopMember() {
+        hz.shutdown();
+    }
+
+    @BeforeEach
+    public void createTable() {
+        merchants = hz.getMap("merchants_" + System.nanoTime());
+        merchants.put("0042", merchant("0042", 500));
+        merchants.put("999999999", merchant("999999999", 700));
+        merchants.put("0043", merchant("0043", -5));
+        table = new MerchantTable(merchants, 16);
+    }
+
+    @AfterEach
+    public void closeTable() {
+        table.close();
+        merchants.destroy();
+    }
+
+    @Test
+    public void loadsMerchants() {
+        assertEquals(500, table.amountLimit("0042"));
+        assertEquals(MerchantTable.UNKNOWN, table.amountLimit("0044"));
+        assertEquals(MerchantTable.UNKNOWN, table.amountLimit("not a number"));
+    }
+
+    @Test
+    public void holdsLargeIdsOutsideTheArray() {
+        assertEquals(700, table.amountLimit("999999999"));
+        assertEquals(MerchantTable.UNKNOWN, table.amountLimit("999999998"));
+    }
+
+    @Test
+    public void rejectsNegativeLimits() {
+        assertEquals(MerchantTable.UNKNOWN, table.amountLimit("0043"));
+    }
+
+    @Test
+    public void followsChanges() throws InterruptedException {
+        merchants.put("0042", merchant("0042", 600));
+        await(600, () -> table.amountLimit("0042"));
+
+        merchants.put("2000000", merchant("2000000", 800));
+        await(800, () -> table.amountLimit("2000000"));
+
+        merchants.remove("999999999");
+        await(MerchantTable.UNKNOWN, () -> table.amountLimit("999999999"));
+
+        merchants.put("0042", merchant("0042", -1));
+        await(MerchantTable.UNKNOWN, () -> table.amountLimit("0042"));
+    }
+
+    @Test
+    public void reloadsWhenCleared() throws InterruptedException {
+        merchants.clear();
+        await(MerchantTable.UNKNOWN, () -> table.amountLimit("0042"));
+        await(MerchantTable.UNKNOWN, () -> table.amountLimit("999999999"));
+    }
+
+    private static Merchant merchant(String id, int limit) {
+        Merchant merchant = new Merchant();
+        merchant.setMerchantId(id);
+        merchant.setRiskCategory(Merchant.RISK_LOW);
+        merchant.setAmountLimit(limit);
+        return merchant;
+    }
+
+    private static void await(int expected, IntSupplier actual) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (actual.getAsInt() != expected) {
+            assertTrue(System.currentTimeMillis() < deadline, "expected " + expected + ", got " + actual.getAsInt());
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package hazelcast.platform.labs.payments;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PipelineOptionsTest {
+
+    @Test
+    public void parsesNameValuePairs() {
+        PipelineOptions options = PipelineOptions.parse(
+                new String[]{"servers", "in", "out", "parser = jackson", "batch.size=64", "card.nearCache=0"}, 3);
+
+        assertEquals("jackson", options.getString(FraudPipeline.PARSER_OPTION, "codec"));
+        assertEquals(64, options.getInt(FraudPipeline.BATCH_SIZE_OPTION, 1));
+        assertEquals(0, options.getLong(FraudPipeline.CARD_NEAR_CACHE_OPTION, 10));
+        assertEquals("json", options.getString(FraudPipeline.OUTPUT_FORMAT_OPTION, "json"));
+    }
+
+    @Test
+    public void rejectsArgumentsWithoutAName() {
+        assertThrows(IllegalArgumentException.class, () -> PipelineOptions.parse(new String[]{"parser"}, 0));
+        assertThrows(IllegalArgumentException.class, () -> PipelineOptions.parse(new String[]{"=codec"}, 0));
+    }
+
+    @Test
+    public void readsBooleans() {
+        PipelineOptions options = new PipelineOptions()
+                .set("a", "true")
+                .set("b", "FALSE")
+                .set("c", "True");
+
+        assertTrue(options.getBoolean("a", false));
+        assertFalse(options.getBoolean("b", true));
+        assertTrue(options.getBoolean("c", false));
+        assertTrue(options.getBoolean("missing", true));
+    }
+
+    @Test
+    public void rejectsMisspeltBooleans() {
+        PipelineOptions options = new PipelineOptions()
+                .set(FraudPipeline.CARD_CHECK_OPTION, "ture")
+                .set(FraudPipeline.DEDUP_OPTION, "yes")
+                .set(FraudPipeline.VELOCITY_CHECK_OPTION, "");
+
+        assertThrows(IllegalArgumentException.class, () -> options.getBoolean(FraudPipeline.CARD_CHECK_OPTION, true));
+        assertThrows(IllegalArgumentException.class, () -> options.getBoolean(FraudPipeline.DEDUP_OPTION, false));
+        assertThrows(IllegalArgumentException.class, () -> options.getBoolean(FraudPipeline.VELOCITY_CHECK_OPTION, true));
+    }
+
+    @Test
+    public void acceptsEveryPipelineOption() {
+        assertTrue(FraudPipeline.OPTION_NAMES.contains(FraudPipeline.PARSER_OPTION));
+        assertTrue(FraudPipeline.OPTION_NAMES.contains(FraudPipeline.CARD_NEAR_CACHE_TTL_SECONDS_OPTION));
+        assertTrue(FraudPipeline.OPTION_NAMES.contains(FraudPipeline.JOURNAL_MAP_OPTION));
+
+        PipelineOptions options = new PipelineOptions();
+        for (String name : FraudPipeline.OPTION_NAMES) options.set(name, "x");
+        options.checkNames(FraudPipeline.OPTION_NAMES);
+    }
+
+    @Test
+    public void rejectsUnknownOptions() {
+        PipelineOptions options = new PipelineOptions()
+                .set(FraudPipeline.CARD_CHECK_OPTION, "false")
+                .set("card.nearcache", "1000");
+
+        IllegalArgumentException x = assertThrows(IllegalArgumentException.class,
+                () -> options.checkNames(FraudPipeline.OPTION_NAMES));
+        assertTrue(x.getMessage().contains("card.nearcache"), x.getMessage());
+
+        options.checkNames(Set.of(FraudPipeline.CARD_CHECK_OPTION, "card.nearcache"));
+    }
+}
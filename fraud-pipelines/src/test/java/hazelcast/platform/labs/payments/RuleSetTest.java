@@ -0,0 +1,110 @@
+package hazelcast.platform.labs.payments;
+
+import hazelcast.platform.labs.payments.domain.Transaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RuleSetTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "amount > 5000",
+            "amount>5000",
+            "  merchant == 42 and amount >= 100  ",
+            "hour < 6 AND amount > 1000",
+            "Amount != -1 and merchant <= 10 and hour >= 0",
+            "amount < 0"
+    })
+    public void compilesValidRules(String definition) {
+        RuleSet rules = RuleSet.compile(Map.of("rule", definition));
+
+        assertEquals(1, rules.size());
+        assertEquals("rule", rules.name(0));
+        assertTrue(rules.rejected().isEmpty(), rules.rejected().toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "   ",
+            "amount",
+            "amount > ",
+            "amount => 5",
+            "amount = 5",
+            "amount > 5.5",
+            "amount > five",
+            "country == 44",
+            "amount > 5 and",
+            "amount > 5 or merchant == 42",
+            "amount > 99999999999999999999"
+    })
+    public void rejectsInvalidRules(String definition) {
+        RuleSet rules = RuleSet.compile(Map.of("bad", definition, "good", "amount > 5000"));
+
+        assertEquals(1, rules.size());
+        assertEquals("good", rules.name(0));
+        assertEquals(Map.of("bad", rules.rejected().get("bad")), rules.rejected());
+    }
+
+    @Test
+    public void matchesAllConditionsOfARule() {
+        RuleSet rules = RuleSet.compile(Map.of("night", "hour < 6 and amount > 1000"));
+
+        assertEquals(0, rules.firstMatch(1001, 1, 5));
+        assertEquals(-1, rules.firstMatch(1000, 1, 5));
+        assertEquals(-1, rules.firstMatch(1001, 1, 6));
+    }
+
+    @Test
+    public void evaluatesEveryOperator() {
+        RuleSet rules = RuleSet.compile(Map.of(
+                "a", "amount < 10",
+                "b", "amount <= 20",
+                "c", "amount > 1000",
+                "d", "amount >= 900",
+                "e", "merchant == 42",
+                "f", "merchant != 7"));
+
+        assertEquals(0, rules.firstMatch(9, 7, 0));
+        assertEquals(1, rules.firstMatch(20, 7, 0));
+        assertEquals(2, rules.firstMatch(1001, 7, 0));
+        assertEquals(3, rules.firstMatch(900, 7, 0));
+        assertEquals(4, rules.firstMatch(500, 42, 0));
+        assertEquals(5, rules.firstMatch(500, 8, 0));
+        assertEquals(-1, rules.firstMatch(500, 7, 0));
+    }
+
+    @Test
+    public void returnsTheFirstMatchInOrderOfName() {
+        RuleSet rules = RuleSet.compile(Map.of("z_big", "amount > 100", "a_huge", "amount > 1000"));
+
+        assertEquals("a_huge", rules.name(rules.firstMatch(5000, 1, 0)));
+        assertEquals("z_big", rules.name(rules.firstMatch(500, 1, 0)));
+    }
+
+    @Test
+    public void readsTheTransaction() {
+        RuleSet rules = RuleSet.compile(Map.of("rule", "merchant == 42 and hour == 3 and amount >= 100"));
+        Transaction txn = new Transaction();
+        txn.setAmount(100);
+        txn.setMerchantId("0042");
+        txn.setTimestamp(3 * 3_600_000L + 59_999);
+
+        assertEquals(0, rules.firstMatch(txn));
+
+        txn.setMerchantId("not a number");
+        assertEquals(-1, rules.firstMatch(txn));
+    }
+
+    @Test
+    public void emptyRuleSetMatchesNothing() {
+        assertEquals(0, RuleSet.EMPTY.size());
+        assertEquals(-1, RuleSet.EMPTY.firstMatch(Integer.MAX_VALUE, 0, 0));
+    }
+}
@@ -0,0 +1,143 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.collection.IList;
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.jet.Job;
+import com.hazelcast.jet.config.JobConfig;
+import com.hazelcast.jet.core.JobStatus;
+import com.hazelcast.jet.pipeline.JournalInitialPosition;
+import com.hazelcast.jet.pipeline.Pipeline;
+import com.hazelcast.jet.pipeline.Sinks;
+import com.hazelcast.jet.pipeline.Sources;
+import com.hazelcast.map.IMap;
+import hazelcast.platform.labs.payments.domain.TransactionCodec;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Runs the pipeline with at_least_once on a single member and restarts it.  There is no snapshot, so
+ * the restarted job reads the whole event journal again: without dedup every transaction is decided
+ * twice, with it each approval is emitted once.
+ */
+public class SeenTransactionsTest {
+    private static final int TRANSACTIONS = 200;
+    private static final long TIMEOUT_MS = 30000;
+
+    private static HazelcastInstance hz;
+
+    @BeforeAll
+    public static void startMember() {
+        System.setProperty("hazelcast.logging.type", "none");
+        Config config = new Config();
+        config.setClusterName("seen-transactions-test");
+        config.getJetConfig().setEnabled(true);
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getJoin().getAutoDetectionConfig().setEnabled(false);
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        config.getMapConfig("*_request").getEventJournalConfig().setEnabled(true).setCapacity(10000);
+        hz = Hazelcast.newHazelcastInstance(config);
+    }
+
+    @AfterAll
+    public static void stopMember() {
+        hz.shutdown();
+    }
+
+    @Test
+    public void emitsEachApprovalOnceAcrossRestart() throws InterruptedException {
+        IList<Map.Entry<String, byte[]>> approvals = runAndRestart("dedup_request", "dedup_approvals", true);
+
+        assertEquals(TRANSACTIONS + 1, approvals.size());
+        assertEquals(TRANSACTIONS + 1, transactionIds(approvals).size());
+    }
+
+    @Test
+    public void replaysWithoutDedup() throws InterruptedException {
+        IList<Map.Entry<String, byte[]>> approvals = runAndRestart("replay_request", "replay_approvals", false);
+
+        assertTrue(approvals.size() > TRANSACTIONS + 1, "expected replayed approvals, got " + approvals.size());
+        assertEquals(TRANSACTIONS + 1, transactionIds(approvals).size());
+    }
+
+    /*
+     * Sends TRANSACTIONS transactions, one of them twice, restarts the job and sends one more.
+     * Returns the approvals once the last one has arrived.
+     */
+    private static IList<Map.Entry<String, byte[]>> runAndRestart(String journalMap, String approvalList,
+                                                                   boolean dedup) throws InterruptedException {
+        PipelineOptions options = new PipelineOptions()
+                .set(FraudPipeline.GUARANTEE_OPTION, "at_least_once")
+                .set(FraudPipeline.DEDUP_OPTION, Boolean.toString(dedup))
+                .set(FraudPipeline.CARD_CHECK_OPTION, "false")
+                .set(FraudPipeline.VELOCITY_CHECK_OPTION, "false");
+        Pipeline pipeline = FraudPipeline.createPipeline(
+                Sources.<String, String>mapJournal(journalMap, JournalInitialPosition.START_FROM_OLDEST),
+                RawTransaction::fromStringEntry,
+                Sinks.list(approvalList),
+                options);
+
+        JobConfig jobConfig = new JobConfig();
+        jobConfig.setProcessingGuarantee(FraudPipeline.processingGuarantee(options));
+        jobConfig.setSnapshotIntervalMillis(3600000);
+        FraudPipeline.registerSerializers(jobConfig);
+        Job job = hz.getJet().newJob(pipeline, jobConfig);
+
+        IMap<String, String> transactions = hz.getMap(journalMap);
+        IList<Map.Entry<String, byte[]>> approvals = hz.getList(approvalList);
+        for (int i = 0; i < TRANSACTIONS; ++i) transactions.put(cardNumber(i), json(i));
+        transactions.put(cardNumber(0), json(0));   // sent twice by the producer
+        awaitSize(approvals, TRANSACTIONS);
+
+        job.restart();
+        while (job.getStatus() != JobStatus.RUNNING) Thread.sleep(10);
+        transactions.put(cardNumber(TRANSACTIONS), json(TRANSACTIONS));
+        awaitTransaction(approvals, "t" + TRANSACTIONS);
+        Thread.sleep(1000);   // let anything else still in flight arrive
+
+        job.cancel();
+        return approvals;
+    }
+
+    private static String cardNumber(int i) {
+        return String.format("4000-0000-0000-%04d", i);
+    }
+
+    private static String json(int i) {
+        return "{\"card_number\":\"" + cardNumber(i) + "\",\"transaction_id\":\"t" + i
+                + "\",\"amount\":10,\"merchant_id\":\"0001\"}";
+    }
+
+    private static Set<String> transactionIds(IList<Map.Entry<String, byte[]>> approvals) {
+        TransactionCodec codec = new TransactionCodec();
+        Set<String> ids = new HashSet<>();
+        for (Map.Entry<String, byte[]> approval : approvals) ids.add(codec.decode(approval.getValue()).getTransactionId());
+        return ids;
+    }
+
+    private static void awaitSize(IList<?> list, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (list.size() < size) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out with " + list.size() + " of " + size);
+            Thread.sleep(50);
+        }
+    }
+
+    private static void awaitTransaction(IList<Map.Entry<String, byte[]>> approvals, String transactionId)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!transactionIds(approvals).contains(transactionId)) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for " + transactionId);
+            Thread.sleep(100);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package hazelcast.platform.labs.payments;
+
+import hazelcast.platform.labs.payments.domain.Transaction;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TransactionParserTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {FraudPipeline.PARSER_CODEC, FraudPipeline.PARSER_JACKSON})
+    public void parsesCompleteTransaction(String parser) {
+        Transaction txn = decode(parser,
+                "{\"card_number\":\"4111111111111111\",\"transaction_id\":\"t1\",\"amount\":250,\"merchant_id\":\"0042\"}");
+
+        assertNotNull(txn);
+        assertEquals("4111111111111111", txn.getCardNumber());
+        assertEquals("t1", txn.getTransactionId());
+        assertEquals(250, txn.getAmount());
+        assertEquals("0042", txn.getMerchantId());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {FraudPipeline.PARSER_CODEC, FraudPipeline.PARSER_JACKSON})
+    public void rejectsMissingCardNumber(String parser) {
+        assertNull(decode(parser, "{\"transaction_id\":\"t1\",\"amount\":250,\"merchant_id\":\"0042\"}"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {FraudPipeline.PARSER_CODEC, FraudPipeline.PARSER_JACKSON})
+    public void rejectsNullCardNumber(String parser) {
+        assertNull(decode(parser,
+                "{\"card_number\":null,\"transaction_id\":\"t1\",\"amount\":250,\"merchant_id\":\"0042\"}"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {FraudPipeline.PARSER_CODEC, FraudPipeline.PARSER_JACKSON})
+    public void rejectsMissingTransactionId(String parser) {
+        assertNull(decode(parser, "{\"card_number\":\"4111111111111111\",\"amount\":250,\"merchant_id\":\"0042\"}"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {FraudPipeline.PARSER_CODEC, FraudPipeline.PARSER_JACKSON})
+    public void rejectsNullTransactionId(String parser) {
+        assertNull(decode(parser,
+                "{\"card_number\":\"4111111111111111\",\"transaction_id\":null,\"amount\":250,\"merchant_id\":\"0042\"}"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {FraudPipeline.PARSER_CODEC, FraudPipeline.PARSER_JACKSON})
+    public void rejectsMalformedJson(String parser) {
+        assertNull(decode(parser, "{\"card_number\":\"4111111111111111\",\"transaction_id\":"));
+    }
+
+    private static Transaction decode(String parser, String json) {
+        return TransactionParser.create(parser).decode(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,92 @@
+package hazelcast.platform.labs.payments;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+ * A window of 6 buckets of 10s: one minute.
+ */
+public class VelocityStateTest {
+    private static final int BUCKETS = 6;
+    private static final long BUCKET_MS = 10_000;
+
+    @Test
+    public void countsTransactionsInTheWindow() {
+        VelocityState state = new VelocityState(BUCKETS);
+        state.add(1_000, 10, BUCKET_MS);
+        state.add(15_000, 20, BUCKET_MS);
+        state.add(59_999, 30, BUCKET_MS);
+
+        assertEquals(3, state.count());
+        assertEquals(60, state.amount());
+    }
+
+    @Test
+    public void dropsBucketsThatSlideOutOfTheWindow() {
+        VelocityState state = new VelocityState(BUCKETS);
+        state.add(1_000, 10, BUCKET_MS);       // bucket 0
+        state.add(15_000, 20, BUCKET_MS);      // bucket 1
+
+        state.add(60_000, 40, BUCKET_MS);      // bucket 6: bucket 0 leaves the window
+        assertEquals(2, state.count());
+        assertEquals(60, state.amount());
+
+        state.add(75_000, 80, BUCKET_MS);      // bucket 7: bucket 1 leaves
+        assertEquals(2, state.count());
+        assertEquals(120, state.amount());
+    }
+
+    @Test
+    public void startsAfreshAfterAGapLongerThanTheWindow() {
+        VelocityState state = new VelocityState(BUCKETS);
+        for (int i = 0; i < BUCKETS; ++i) state.add(i * BUCKET_MS, 100, BUCKET_MS);
+        assertEquals(BUCKETS, state.count());
+
+        state.add(1_000_000, 5, BUCKET_MS);
+        assertEquals(1, state.count());
+        assertEquals(5, state.amount());
+    }
+
+    @Test
+    public void countsLateEventsInsideTheWindow() {
+        VelocityState state = new VelocityState(BUCKETS);
+        state.add(55_000, 10, BUCKET_MS);      // bucket 5
+        state.add(5_000, 20, BUCKET_MS);       // bucket 0, late but still in the window
+        assertEquals(2, state.count());
+        assertEquals(30, state.amount());
+
+        state.add(60_000, 40, BUCKET_MS);      // bucket 6 replaces bucket 0, with the late event
+        assertEquals(2, state.count());
+        assertEquals(50, state.amount());
+    }
+
+    @Test
+    public void ignoresEventsOlderThanTheWindow() {
+        VelocityState state = new VelocityState(BUCKETS);
+        state.add(100_000, 10, BUCKET_MS);     // bucket 10, the window is buckets 5 to 10
+        state.add(49_999, 20, BUCKET_MS);      // bucket 4
+
+        assertEquals(1, state.count());
+        assertEquals(10, state.amount());
+    }
+
+    @Test
+    public void ignoresNegativeAmounts() {
+        VelocityState state = new VelocityState(BUCKETS);
+        state.add(0, -50, BUCKET_MS);
+        state.add(0, 20, BUCKET_MS);
+
+        assertEquals(2, state.count());
+        assertEquals(20, state.amount());
+    }
+
+    @Test
+    public void saturatesTheCount() {
+        VelocityState state = new VelocityState(BUCKETS);
+        for (int i = 0; i < 70_000; ++i) state.add(0, 1, BUCKET_MS);
+
+        assertEquals(65_535, state.count());
+        assertEquals(70_000, state.amount());
+    }
+}
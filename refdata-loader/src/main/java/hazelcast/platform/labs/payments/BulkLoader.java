@@ -0,0 +1,190 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.map.IMap;
+import com.hazelcast.partition.PartitionService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/*
+ * Loads generated entries into an IMap using several threads.
+ *
+ * Worker threads claim blocks of indexes, generate a value for each index and group the entries by
+ * the member that owns the key's partition.  When a member's group reaches the batch size it is sent
+ * with putAllAsync, so a batch goes to a single member. Generation continues while batches are in
+ * flight. A semaphore limits the number of batches in flight so that a fast generator can't swamp
+ * the cluster (or the client's heap).
+ *
+ * Because a block's entries go out in several batches, and batches complete in any order, the loader
+ * also keeps a watermark: the index below which every entry has been stored.  A load that stops
+ * part way, for whatever reason, can be started again from the watermark; at most the entries that
+ * were in flight are put twice.  watermark() and loaded() can be read from any thread while a load
+ * is running, e.g. to report progress.  One instance runs one load at a time.
+ */
+public class BulkLoader<K, V> {
+    private final IMap<K, V> map;
+    private final PartitionService partitionService;
+    private final int threads;
+    private final int batchSize;
+    private final int maxInFlight;
+
+    private final Semaphore inFlight;
+
+    // progress of the current load
+    private final AtomicLong loaded = new AtomicLong();
+    private final Map<Long, AtomicInteger> outstandingByBlock = new ConcurrentHashMap<>();
+    private final TreeSet<Long> completedBlocks = new TreeSet<>();
+    private volatile long watermark;
+    private long toIndex;
+
+    public BulkLoader(IMap<K, V> map, PartitionService partitionService, int threads, int batchSize, int maxInFlight) {
+        this.map = map;
+        this.partitionService = partitionService;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /*
+     * Generates and loads the entries for indexes fromIndex (inclusive) to toIndex (exclusive).
+     * Returns the number of entries sent. Throws if any batch of this load failed or a worker was
+     * interrupted; a failed load does not affect the next one.
+     */
+    public long load(long fromIndex, long toIndex, LongFunction<V> generator, Function<? super V, K> keyFn)
+            throws InterruptedException {
+        AtomicLong nextIndex = new AtomicLong(fromIndex);
+        AtomicLong sent = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        outstandingByBlock.clear();
+        synchronized (completedBlocks) {
+            this.toIndex = toIndex;
+            this.watermark = fromIndex;
+            completedBlocks.clear();
+        }
+        loaded.set(0);
+
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; ++t) {
+            Thread worker = new Thread(() -> {
+                try {
+                    sent.addAndGet(generate(nextIndex, toIndex, generator, keyFn, failure));
+                } catch (InterruptedException x) {
+                    // the range isn't finished, so the load must not look successful
+                    failure.compareAndSet(null, x);
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException x) {
+                    failure.compareAndSet(null, x);
+                }
+            }, "loader-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+
+        for (Thread worker : workers) worker.join();
+
+        // wait for the last batches to complete
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+
+        Throwable t = failure.get();
+        if (t != null) throw new IllegalStateException("Loading failed", t);
+
+        return sent.get();
+    }
+
+    /*
+     * Every entry with an index below this has been stored
+     */
+    public long watermark(){
+        return watermark;
+    }
+
+    /*
+     * The number of entries stored so far by the current load
+     */
+    public long loaded(){
+        return loaded.get();
+    }
+
+    private long generate(AtomicLong nextIndex, long toIndex, LongFunction<V> generator, Function<? super V, K> keyFn,
+                          AtomicReference<Throwable> failure) throws InterruptedException {
+        Map<Member, Batch<K, V>> batches = new HashMap<>();
+        long sent = 0;
+        while (failure.get() == null) {
+            long start = nextIndex.getAndAdd(batchSize);
+            if (start >= toIndex) break;
+
+            long end = Math.min(toIndex, start + batchSize);
+            outstandingByBlock.put(start, new AtomicInteger((int) (end - start)));
+            for (long i = start; i < end; ++i) {
+                V value = generator.apply(i);
+                K key = keyFn.apply(value);
+
+                // the owner may be null while the client is still learning the partition table
+                Member owner = partitionService.getPartition(key).getOwner();
+                Batch<K, V> batch = batches.computeIfAbsent(owner, m -> new Batch<>());
+                batch.add(key, value, start);
+                if (batch.entries.size() == batchSize) {
+                    sent += send(batch, failure);
+                    batches.remove(owner);
+                }
+            }
+        }
+
+        for (Batch<K, V> batch : batches.values()) sent += send(batch, failure);
+        return sent;
+    }
+
+    private int send(Batch<K, V> batch, AtomicReference<Throwable> failure) throws InterruptedException {
+        inFlight.acquire();
+        map.putAllAsync(batch.entries).whenComplete((v, t) -> {
+            if (t != null) {
+                failure.compareAndSet(null, t);
+            } else {
+                loaded.addAndGet(batch.entries.size());
+                batch.countByBlock.forEach(this::stored);
+            }
+            inFlight.release();
+        });
+        return batch.entries.size();
+    }
+
+    // count entries of the block starting at blockStart have been stored
+    private void stored(long blockStart, int count){
+        if (outstandingByBlock.get(blockStart).addAndGet(-count) > 0) return;
+
+        outstandingByBlock.remove(blockStart);
+        synchronized (completedBlocks) {
+            completedBlocks.add(blockStart);
+            while (!completedBlocks.isEmpty() && completedBlocks.first() == watermark) {
+                completedBlocks.pollFirst();
+                watermark = Math.min(toIndex, watermark + batchSize);
+            }
+        }
+    }
+
+    /*
+     * The entries for one member, and how many of them came from each block
+     */
+    private static class Batch<K, V> {
+        final Map<K, V> entries = new HashMap<>();
+        final Map<Long, Integer> countByBlock = new HashMap<>();
+
+        void add(K key, V value, long blockStart){
+            entries.put(key, value);
+            countByBlock.merge(blockStart, 1, Integer::sum);
+        }
+    }
+}
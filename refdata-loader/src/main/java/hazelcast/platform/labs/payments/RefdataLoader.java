@@ -5,11 +5,20 @@ import com.hazelcast.client.config.ClientConfig;
 import com.hazelcast.client.config.ClientConnectionStrategyConfig;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.map.IMap;
+import hazelcast.platform.labs.payments.domain.BlockedCard;
 import hazelcast.platform.labs.payments.domain.Card;
+import hazelcast.platform.labs.payments.domain.CardNumberGenerator;
+import hazelcast.platform.labs.payments.domain.Merchant;
 import hazelcast.platform.labs.payments.domain.Names;
+import hazelcast.platform.labs.payments.domain.PackedCard;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongFunction;
 
 /**
  * Expects the following environment variables
@@ -20,13 +29,67 @@ import java.util.Map;
  * HZ_CLUSTER_NAME  The name of the Hazelcast cluster to connect.  Required.
  * <p>
  * CARD_COUNT The number of machines credit cards to load
- *
+ * <p>
+ * CARD_SEED Seed for the card number generator. The same seed always produces the same cards so, for
+ *           example, the event generator can derive the card numbers without reading them from the
+ *           cluster. Optional, defaults to CardNumberGenerator.DEFAULT_SEED.
+ * <p>
+ * CARD_KEY "string" to key the cards map by the "NNNN-NNNN-NNNN-NNNN" card number, with Card values, or
+ *          "long" to key it by the card number packed into a long, with PackedCard values, which takes
+ *          less memory.  The fraud pipeline's card.key option must match. Clear the map before
+ *          changing it. Optional, defaults to "string".
+ * <p>
+ * MERCHANT_COUNT The number of merchants to load, with ids 0000 up to MERCHANT_COUNT - 1.  The event
+ *                generator uses ids 0000 to 9998. Optional, defaults to 10,000.  Only the loader whose
+ *                range starts at 0 loads the merchants.
+ * <p>
+ * BLOCKED_CARD_COUNT The number of the loaded cards to also put in the blocked_cards map. The blocked
+ *                    cards are spread evenly over the loaded cards.  Optional, defaults to 0.  Only the
+ *                    loader whose range starts at 0 loads them.
+ * <p>
+ * LOADER_THREADS The number of threads generating cards.  Optional, defaults to the number of processors.
+ * <p>
+ * LOADER_BATCH_SIZE The number of cards sent to the cluster in each putAll.  Optional, defaults to 1000.
+ * <p>
+ * LOADER_MAX_IN_FLIGHT The maximum number of batches waiting for the cluster at any time. Optional,
+ *                      defaults to twice the number of loader threads.
+ * <p>
+ * LOADER_RANGE_START, LOADER_RANGE_END  The cards this process loads, from index LOADER_RANGE_START
+ *                      (inclusive) to LOADER_RANGE_END (exclusive), so that a large load can be split
+ *                      over several loader processes, each with its own range.  Optional, default to
+ *                      0 and CARD_COUNT.
+ * <p>
+ * LOADER_PROGRESS_SECONDS How often progress is checkpointed and published.  Optional, defaults to 5.
+ * <p>
+ * Progress is kept in the system_activities map, per range:
+ * <p>
+ * LOADER_CHECKPOINT_&lt;range start&gt; holds the index below which every card of the range has been stored.
+ * A loader that is restarted for the same range carries on from there.  Running again with a larger
+ * CARD_COUNT loads just the new cards.
+ * <p>
+ * LOADER_PROGRESS_&lt;range start&gt; holds, e.g., "1200000 of 5000000 cards loaded, 85000 cards/s".
+ * <p>
+ * LOADER_STATUS_&lt;range start&gt; is FINISHED once the range is loaded, and for the range starting at
+ * 0 the merchants and the blocked cards too.  LOADER_STATUS is STARTED while any loader runs and
+ * FINISHED once the checkpoints of the ranges cover all CARD_COUNT cards and range 0 is FINISHED, so
+ * with several ranges it is set by whichever loader finishes last.  Use MapWaiter to wait for any of
+ * these.
  */
 public class RefdataLoader {
     private static final String HZ_SERVERS_PROP = "HZ_SERVERS";
     private static final String HZ_CLUSTER_NAME_PROP = "HZ_CLUSTER_NAME";
 
     private static final String CARD_COUNT_PROP = "CARD_COUNT";
+    private static final String CARD_SEED_PROP = "CARD_SEED";
+    private static final String CARD_KEY_PROP = "CARD_KEY";
+    private static final String MERCHANT_COUNT_PROP = "MERCHANT_COUNT";
+    private static final String BLOCKED_CARD_COUNT_PROP = "BLOCKED_CARD_COUNT";
+    private static final String LOADER_THREADS_PROP = "LOADER_THREADS";
+    private static final String LOADER_BATCH_SIZE_PROP = "LOADER_BATCH_SIZE";
+    private static final String LOADER_MAX_IN_FLIGHT_PROP = "LOADER_MAX_IN_FLIGHT";
+    private static final String LOADER_RANGE_START_PROP = "LOADER_RANGE_START";
+    private static final String LOADER_RANGE_END_PROP = "LOADER_RANGE_END";
+    private static final String LOADER_PROGRESS_SECONDS_PROP = "LOADER_PROGRESS_SECONDS";
 
     private static final String CARD_MAPPING_SQL =
             "CREATE OR REPLACE MAPPING cards (cardNumber VARCHAR ) " +
@@ -36,10 +99,45 @@ public class RefdataLoader {
                 "'valueFormat' = 'compact' ," +
                 "'valueCompactTypeName' = 'hazelcast.platform.labs.payments.domain.Card')";
 
+    private static final String PACKED_CARD_MAPPING_SQL =
+            "CREATE OR REPLACE MAPPING cards (cardNumber BIGINT ) " +
+            "Type IMap " +
+            "OPTIONS ( " +
+                "'keyFormat' = 'bigint', " +
+                "'valueFormat' = 'compact' ," +
+                "'valueCompactTypeName' = 'hazelcast.platform.labs.payments.domain.PackedCard')";
+
+    private static final String MERCHANT_MAPPING_SQL =
+            "CREATE OR REPLACE MAPPING merchants (merchantId VARCHAR, riskCategory VARCHAR, amountLimit INT ) " +
+            "Type IMap " +
+            "OPTIONS ( " +
+                "'keyFormat' = 'varchar', " +
+                "'valueFormat' = 'compact' ," +
+                "'valueCompactTypeName' = 'hazelcast.platform.labs.payments.domain.Merchant')";
+
+    private static final String BLOCKED_CARD_MAPPING_SQL =
+            "CREATE OR REPLACE MAPPING blocked_cards (cardNumber VARCHAR, reason VARCHAR ) " +
+            "Type IMap " +
+            "OPTIONS ( " +
+                "'keyFormat' = 'varchar', " +
+                "'valueFormat' = 'compact' ," +
+                "'valueCompactTypeName' = 'hazelcast.platform.labs.payments.domain.BlockedCard')";
+
     private static String []hzServers;
     private static String hzClusterName;
 
     private static int cardCount;
+    private static long cardSeed;
+    private static boolean packedCardKeys;
+    private static int merchantCount;
+    private static int blockedCardCount;
+
+    private static int loaderThreads;
+    private static int batchSize;
+    private static int maxInFlight;
+    private static int rangeStart;
+    private static int rangeEnd;
+    private static int progressSeconds;
 
     private static String getRequiredProp(String propName){
         String prop = System.getenv(propName);
@@ -50,6 +148,29 @@ public class RefdataLoader {
         return prop;
     }
 
+    private static int getOptionalIntProp(String propName, int defaultValue){
+        return getOptionalIntProp(propName, defaultValue, 1);
+    }
+
+    private static int getOptionalIntProp(String propName, int defaultValue, int minimum){
+        String prop = System.getenv(propName);
+        if (prop == null) return defaultValue;
+
+        int result = 0;
+        try {
+            result = Integer.parseInt(prop);
+        } catch(NumberFormatException nfx){
+            System.err.println("Could not parse " + propName + "=" + prop + " as an integer");
+            System.exit(1);
+        }
+
+        if (result < minimum){
+            System.err.println(propName + " must be at least " + minimum);
+            System.exit(1);
+        }
+        return result;
+    }
+
     private static void configure(){
         String hzServersProp = getRequiredProp(HZ_SERVERS_PROP);
         hzServers = hzServersProp.split(",");
@@ -69,14 +190,136 @@ public class RefdataLoader {
             System.err.println("Card count must be between 1 and 10,000,000 inclusive");
             System.exit(1);
         }
+
+        String seed = System.getenv(CARD_SEED_PROP);
+        cardSeed = CardNumberGenerator.DEFAULT_SEED;
+        if (seed != null) {
+            try {
+                cardSeed = Long.parseLong(seed);
+            } catch (NumberFormatException nfx) {
+                System.err.println("Could not parse " + CARD_SEED_PROP + "=" + seed + " as a long");
+                System.exit(1);
+            }
+        }
+
+        String cardKey = System.getenv(CARD_KEY_PROP);
+        if (cardKey != null && !cardKey.equals("string") && !cardKey.equals("long")){
+            System.err.println(CARD_KEY_PROP + " must be either string or long");
+            System.exit(1);
+        }
+        packedCardKeys = "long".equals(cardKey);
+
+        merchantCount = getOptionalIntProp(MERCHANT_COUNT_PROP, 10000);
+        blockedCardCount = System.getenv(BLOCKED_CARD_COUNT_PROP) == null
+                ? 0 : getOptionalIntProp(BLOCKED_CARD_COUNT_PROP, 0);
+        if (blockedCardCount > cardCount){
+            System.err.println(BLOCKED_CARD_COUNT_PROP + " can not be more than " + CARD_COUNT_PROP);
+            System.exit(1);
+        }
+
+        loaderThreads = getOptionalIntProp(LOADER_THREADS_PROP, Runtime.getRuntime().availableProcessors());
+        batchSize = getOptionalIntProp(LOADER_BATCH_SIZE_PROP, 1000);
+        maxInFlight = getOptionalIntProp(LOADER_MAX_IN_FLIGHT_PROP, 2 * loaderThreads);
+
+        rangeStart = getOptionalIntProp(LOADER_RANGE_START_PROP, 0, 0);
+        rangeEnd = getOptionalIntProp(LOADER_RANGE_END_PROP, cardCount);
+        if (rangeStart >= rangeEnd || rangeEnd > cardCount){
+            System.err.println(LOADER_RANGE_START_PROP + " must be less than " + LOADER_RANGE_END_PROP
+                    + ", which can not be more than " + CARD_COUNT_PROP);
+            System.exit(1);
+        }
+        progressSeconds = getOptionalIntProp(LOADER_PROGRESS_SECONDS_PROP, 5);
     }
 
     private static void doSQLMappings(HazelcastInstance hzClient){
-            hzClient.getSql().execute(CARD_MAPPING_SQL);
+            hzClient.getSql().execute(packedCardKeys ? PACKED_CARD_MAPPING_SQL : CARD_MAPPING_SQL);
+            hzClient.getSql().execute(MERCHANT_MAPPING_SQL);
+            hzClient.getSql().execute(BLOCKED_CARD_MAPPING_SQL);
         System.out.println("Initialized SQL Mappings");
     }
 
-    public static void main(String []args){
+    /*
+     * Merchant i is always the same merchant, so, like blocked cards, merchants are simply loaded
+     * again on every run.
+     */
+    private static void loadMerchants(HazelcastInstance hzClient) throws InterruptedException {
+        IMap<String, Merchant> merchantMap = hzClient.getMap(Names.MERCHANT_MAP_NAME);
+        BulkLoader<String, Merchant> loader = new BulkLoader<>(
+                merchantMap, hzClient.getPartitionService(), loaderThreads, batchSize, maxInFlight);
+
+        long sent = loader.load(0, merchantCount, i -> Merchant.generate((int) i), Merchant::getMerchantId);
+        System.out.println("Loaded " + sent + " merchants");
+    }
+
+    /*
+     * Blocks every (cardCount / blockedCardCount)th card.  Putting a card that is already blocked
+     * changes nothing, so this is simply repeated on every run.
+     */
+    private static void loadBlockedCards(HazelcastInstance hzClient) throws InterruptedException {
+        IMap<String, BlockedCard> blockedCardMap = hzClient.getMap(Names.BLOCKED_CARD_MAP_NAME);
+        BulkLoader<String, BlockedCard> loader = new BulkLoader<>(
+                blockedCardMap, hzClient.getPartitionService(), loaderThreads, batchSize, maxInFlight);
+
+        CardNumberGenerator generator = new CardNumberGenerator(cardSeed);
+        long step = cardCount / blockedCardCount;
+        long sent = loader.load(0, blockedCardCount,
+                i -> BlockedCard.of(generator.cardNumberAt(i * step), "compromised"), BlockedCard::getCardNumber);
+        System.out.println("Blocked " + sent + " cards");
+    }
+
+    /*
+     * Loads the cards from resumeFrom to the end of the range, checkpointing and publishing progress
+     * every progressSeconds, and once more at the end, also if the load fails.
+     */
+    private static <K, V> void loadCards(BulkLoader<K, V> loader, long resumeFrom, LongFunction<V> generator,
+                                         Function<? super V, K> keyFn, IMap<String, String> systemActivitiesMap)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        Runnable publishProgress = () -> {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            String progress = String.format("%d of %d cards loaded, %.0f cards/s",
+                    loader.watermark() - rangeStart, rangeEnd - rangeStart, loader.loaded() / seconds);
+            systemActivitiesMap.put("LOADER_CHECKPOINT_" + rangeStart, Long.toString(loader.watermark()));
+            systemActivitiesMap.put("LOADER_PROGRESS_" + rangeStart, progress);
+            System.out.println(progress);
+        };
+
+        ScheduledExecutorService progressReporter = Executors.newSingleThreadScheduledExecutor();
+        progressReporter.scheduleAtFixedRate(publishProgress, progressSeconds, progressSeconds, TimeUnit.SECONDS);
+        long sent;
+        try {
+            sent = loader.load(resumeFrom, rangeEnd, generator, keyFn);
+        } finally {
+            progressReporter.shutdown();
+            progressReporter.awaitTermination(10, TimeUnit.SECONDS);
+            publishProgress.run();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Sent %d cards in %.1fs (%.0f entries/sec)%n", sent, seconds, sent / seconds);
+    }
+
+    /*
+     * The index below which every card has been stored, according to the checkpoints of all the ranges.
+     * The map's size is no use for this: it also counts cards left over from an earlier, larger load.
+     */
+    static long loadedCards(Map<String, String> systemActivitiesMap){
+        TreeMap<Long, Long> checkpoints = new TreeMap<>();
+        for (Map.Entry<String, String> entry : systemActivitiesMap.entrySet()) {
+            if (entry.getKey().startsWith("LOADER_CHECKPOINT_"))
+                checkpoints.put(Long.parseLong(entry.getKey().substring("LOADER_CHECKPOINT_".length())),
+                        Long.parseLong(entry.getValue()));
+        }
+
+        long loaded = 0;
+        for (Map.Entry<Long, Long> checkpoint : checkpoints.entrySet()) {
+            if (checkpoint.getKey() > loaded) break;
+            loaded = Math.max(loaded, checkpoint.getValue());
+        }
+        return loaded;
+    }
+
+    public static void main(String []args) throws InterruptedException {
         configure();
 
         ClientConfig clientConfig = new ClientConfig();
@@ -87,38 +330,57 @@ public class RefdataLoader {
 
         HazelcastInstance hzClient = HazelcastClient.newHazelcastClient(clientConfig);
 
-        doSQLMappings(hzClient);
+        // the client's threads would keep the process alive if a load failed
+        try {
+            doSQLMappings(hzClient);
 
-        IMap<String, Card> cardMap = hzClient.getMap(Names.CARD_MAP_NAME);
-        IMap<String, String> systemActivitiesMap = hzClient.getMap(Names.SYSTEM_ACTIVITIES_MAP_NAME);
+            IMap<?, ?> cardMap = hzClient.getMap(Names.CARD_MAP_NAME);
+            IMap<String, String> systemActivitiesMap = hzClient.getMap(Names.SYSTEM_ACTIVITIES_MAP_NAME);
 
-        systemActivitiesMap.put("LOADER_STATUS","STARTED");
+            systemActivitiesMap.put("LOADER_STATUS","STARTED");
 
-        int existingEntries = cardMap.size();
-        int toLoad = cardCount - existingEntries;
+            /*
+             * Card i is always the same card for a given seed, so the cards below the checkpoint are
+             * already there and loading continues from it.  The checkpoint is ignored if the map is
+             * empty, e.g. after it has been cleared.
+             */
+            String checkpointKey = "LOADER_CHECKPOINT_" + rangeStart;
+            String checkpoint = systemActivitiesMap.get(checkpointKey);
+            long resumeFrom = checkpoint == null || cardMap.isEmpty()
+                    ? rangeStart : Math.max(rangeStart, Long.parseLong(checkpoint));
 
-        if (toLoad <= 0){
-            System.out.println("" + existingEntries + " cards are already present");
-        } else {
-            Map<String, Card> batch = new HashMap<>();
-            for(int i=0; i < toLoad; ++i){
-                Card c = Card.fake();
-                batch.put(c.getCardNumber(), c);
-                int BATCH_SIZE = 1000;
-                if (batch.size() == BATCH_SIZE){
-                    cardMap.putAll(batch);
-                    batch.clear();
+            if (resumeFrom >= rangeEnd){
+                System.out.println("Cards " + rangeStart + " to " + (rangeEnd - 1) + " are already present");
+            } else {
+                System.out.println("Loading cards " + resumeFrom + " to " + (rangeEnd - 1) + " using " + loaderThreads
+                        + " threads, batches of " + batchSize + " and at most " + maxInFlight + " batches in flight");
+                CardNumberGenerator generator = new CardNumberGenerator(cardSeed);
+                if (packedCardKeys) {
+                    BulkLoader<Long, PackedCard> loader = new BulkLoader<>(hzClient.getMap(Names.CARD_MAP_NAME),
+                            hzClient.getPartitionService(), loaderThreads, batchSize, maxInFlight);
+                    loadCards(loader, resumeFrom, i -> PackedCard.withNumber(generator.numberAt(i)),
+                            PackedCard::getCardNumber, systemActivitiesMap);
+                } else {
+                    BulkLoader<String, Card> loader = new BulkLoader<>(hzClient.getMap(Names.CARD_MAP_NAME),
+                            hzClient.getPartitionService(), loaderThreads, batchSize, maxInFlight);
+                    loadCards(loader, resumeFrom, i -> Card.withNumber(generator.cardNumberAt(i)),
+                            Card::getCardNumber, systemActivitiesMap);
                 }
             }
 
-            if (batch.size() > 0) cardMap.putAll(batch);
+            if (rangeStart == 0) {
+                loadMerchants(hzClient);
+                if (blockedCardCount > 0) loadBlockedCards(hzClient);
+            }
 
-            if (cardCount == toLoad)
-                System.out.println("Loaded " + cardCount + " cards");
+            systemActivitiesMap.put("LOADER_STATUS_" + rangeStart, "FINISHED");
+            long loaded = loadedCards(systemActivitiesMap);
+            if (loaded >= cardCount && "FINISHED".equals(systemActivitiesMap.get("LOADER_STATUS_0")))
+                systemActivitiesMap.put("LOADER_STATUS","FINISHED");
             else
-                System.out.println("Loaded " + toLoad + " cards bringing the total to " + cardCount);
+                System.out.println("The first " + loaded + " of " + cardCount + " cards are loaded, waiting for the other ranges");
+        } finally {
+            hzClient.shutdown();
         }
-        systemActivitiesMap.put("LOADER_STATUS","FINISHED");
-        hzClient.shutdown();
     }
 }
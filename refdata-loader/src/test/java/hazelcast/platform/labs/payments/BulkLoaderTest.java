@@ -0,0 +1,62 @@
+package hazelcast.platform.labs.payments;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BulkLoaderTest {
+    private static HazelcastInstance hz;
+
+    @BeforeAll
+    public static void startMember() {
+        System.setProperty("hazelcast.logging.type", "none");
+        Config config = new Config();
+        config.setClusterName("bulk-loader-test");
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getJoin().getAutoDetectionConfig().setEnabled(false);
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        hz = Hazelcast.newHazelcastInstance(config);
+    }
+
+    @AfterAll
+    public static void stopMember() {
+        hz.shutdown();
+    }
+
+    @Test
+    public void loadsRange() throws InterruptedException {
+        IMap<Long, String> map = hz.getMap("loadsRange");
+        BulkLoader<Long, String> loader = new BulkLoader<>(map, hz.getPartitionService(), 2, 100, 4);
+
+        long sent = loader.load(0, 1050, Long::toString, Long::valueOf);
+
+        assertEquals(1050, sent);
+        assertEquals(1050, map.size());
+        assertEquals(1050, loader.watermark());
+    }
+
+    @Test
+    public void failsWhenAWorkerIsInterrupted() {
+        IMap<Long, String> map = hz.getMap("failsWhenAWorkerIsInterrupted");
+        BulkLoader<Long, String> loader = new BulkLoader<>(map, hz.getPartitionService(), 1, 100, 4);
+
+        IllegalStateException x = assertThrows(IllegalStateException.class, () ->
+                loader.load(0, 10000, i -> {
+                    // the worker's next wait for a batch slot throws
+                    if (i == 500) Thread.currentThread().interrupt();
+                    return Long.toString(i);
+                }, Long::valueOf));
+
+        assertInstanceOf(InterruptedException.class, x.getCause());
+        assertTrue(loader.watermark() < 10000, "watermark " + loader.watermark());
+    }
+}
@@ -0,0 +1,40 @@
+package hazelcast.platform.labs.payments;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RefdataLoaderTest {
+
+    @Test
+    public void loadedCardsFollowsContiguousCheckpoints() {
+        Map<String, String> activities = new HashMap<>();
+        activities.put("LOADER_STATUS", "STARTED");
+        activities.put("LOADER_CHECKPOINT_0", "1000");
+        activities.put("LOADER_CHECKPOINT_1000", "2000");
+        activities.put("LOADER_CHECKPOINT_2000", "2500");
+
+        assertEquals(2500, RefdataLoader.loadedCards(activities));
+    }
+
+    @Test
+    public void loadedCardsStopsAtAGap() {
+        Map<String, String> activities = new HashMap<>();
+        activities.put("LOADER_CHECKPOINT_0", "1000");
+        activities.put("LOADER_CHECKPOINT_1000", "1500");   // range 1000-2000 is still loading
+        activities.put("LOADER_CHECKPOINT_2000", "3000");
+
+        assertEquals(1500, RefdataLoader.loadedCards(activities));
+    }
+
+    @Test
+    public void loadedCardsIsZeroWithoutTheFirstRange() {
+        Map<String, String> activities = new HashMap<>();
+        activities.put("LOADER_CHECKPOINT_1000", "2000");
+
+        assertEquals(0, RefdataLoader.loadedCards(activities));
+    }
+}